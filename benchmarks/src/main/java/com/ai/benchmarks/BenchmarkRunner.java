@@ -0,0 +1,29 @@
+package com.ai.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks with the GC profiler (allocation rate) and writes JSON results to
+ * {@code target/jmh-<version>.json}, so results of releases can be compared.
+ * Accepts the usual JMH command line options, e.g. a benchmark regex.
+ * <p>
+ * {@code java -cp target/benchmarks.jar com.ai.benchmarks.BenchmarkRunner YjsBenchmark}
+ */
+public class BenchmarkRunner {
+    public static void main(String[] args) throws Exception {
+        String version = System.getProperty("yjs.version", "1.0.1-SNAPSHOT");
+        new File("target").mkdirs();
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result("target/jmh-" + version + ".json")
+                .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.ai.benchmarks;
+
+import com.ai.Y;
+import com.ai.types.YArray;
+import com.ai.types.YMap;
+import com.ai.types.ytext.YText;
+import com.ai.utils.Doc;
+import com.ai.utils.Transaction;
+import com.ai.utils.Updates;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single operations on a document that already holds {@code size} edits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CoreOpsBenchmark {
+    @Param({"1000", "10000"})
+    public int size;
+
+    /**
+     * The encoded document, {@code size} typing edits.
+     */
+    int[] docUpdate;
+    byte[] docUpdateBytes;
+    /**
+     * One update per edit, as emitted by the "update" event.
+     */
+    List<int[]> updates;
+    Doc doc;
+
+    @Setup
+    public void setup() {
+        Doc source = new Doc();
+        List<int[]> emitted = new ArrayList<>();
+        source.<int[], Object, Doc, Transaction>on("update", (update, origin, d, t) -> emitted.add(update));
+        YText text = source.getText("text");
+        for (Traces.Edit edit : Traces.typing(7, size)) {
+            Traces.apply(text, edit);
+        }
+        updates = emitted;
+        docUpdate = Y.encodeStateAsUpdate(source);
+        docUpdateBytes = Y.encodeStateAsUpdateBytes(source);
+        doc = source;
+    }
+
+    /**
+     * Edits change the document, so they run on a fresh copy per iteration.
+     */
+    @State(Scope.Thread)
+    public static class EditState {
+        Doc doc;
+        YText text;
+        YArray<Integer> array;
+        YMap map;
+        int i;
+
+        @Setup(Level.Iteration)
+        public void setup(CoreOpsBenchmark bench) {
+            doc = new Doc();
+            Y.applyUpdate(doc, bench.docUpdateBytes);
+            text = doc.getText("text");
+            array = doc.getArray("array");
+            map = doc.getMap("map");
+            i = 0;
+        }
+    }
+
+    @Benchmark
+    public void ytextInsert(EditState s) {
+        s.text.insert((s.i++ * 31) % (s.text.length() + 1), "x");
+    }
+
+    @Benchmark
+    public void yarrayInsert(EditState s) {
+        s.array.insert((s.i * 31) % (s.i + 1), Collections.singletonList(s.i++));
+    }
+
+    @Benchmark
+    public Object ymapSet(EditState s) {
+        return s.map.set("key" + (s.i++ & 63), s.i);
+    }
+
+    @Benchmark
+    public Doc applyUpdate() {
+        Doc fresh = new Doc();
+        Y.applyUpdate(fresh, docUpdate);
+        return fresh;
+    }
+
+    @Benchmark
+    public Doc applyUpdateBytes() {
+        Doc fresh = new Doc();
+        Y.applyUpdate(fresh, docUpdateBytes);
+        return fresh;
+    }
+
+    @Benchmark
+    public int[] encodeStateAsUpdate() {
+        return Y.encodeStateAsUpdate(doc);
+    }
+
+    @Benchmark
+    public byte[] encodeStateAsUpdateBytes() {
+        return Y.encodeStateAsUpdateBytes(doc);
+    }
+
+    @Benchmark
+    public int[] mergeUpdates() {
+        return Updates.mergeUpdates(updates);
+    }
+}
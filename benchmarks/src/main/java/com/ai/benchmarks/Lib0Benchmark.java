@@ -0,0 +1,156 @@
+package com.ai.benchmarks;
+
+import com.ai.myutils.decoder.Decoder;
+import com.ai.myutils.decoder.decoding;
+import com.ai.myutils.encoder.Encoder;
+import com.ai.myutils.encoder.encoding;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Varint and string encoding/decoding of lib0, compared with the previous implementation in {@link Lib0Legacy}.
+ * <p>
+ * {@code java -jar target/benchmarks.jar Lib0Benchmark -prof gc -rf json}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Lib0Benchmark {
+    static final int N = 1024;
+
+    /**
+     * ascii: short keys and text, mixed: latin/CJK/emoji text.
+     */
+    @Param({"ascii", "mixed"})
+    public String strings;
+
+    int[] nums;
+    String[] strs;
+    byte[] encodedNums;
+    byte[] encodedStrs;
+    ByteBuffer directStrs;
+
+    @Setup
+    public void setup() {
+        Random rnd = new Random(42);
+        nums = new int[N];
+        for (int i = 0; i < N; i++) {
+            // mostly small clocks and lengths, some client ids
+            nums[i] = i % 8 == 0 ? rnd.nextInt(Integer.MAX_VALUE) : rnd.nextInt(1 << (1 + rnd.nextInt(14)));
+        }
+        String alphabet = "ascii".equals(strings) ? "abcdefghijklmnopqrstuvwxyz0123456789" : "aäöü€中文字😀";
+        strs = new String[N];
+        for (int i = 0; i < N; i++) {
+            StringBuilder sb = new StringBuilder();
+            int len = 1 + rnd.nextInt(24);
+            while (sb.length() < len) {
+                sb.appendCodePoint(alphabet.codePointAt(alphabet.offsetByCodePoints(0, rnd.nextInt(alphabet.codePointCount(0, alphabet.length())))));
+            }
+            strs[i] = sb.toString();
+        }
+        Encoder encoder = encoding.createEncoder();
+        for (int num : nums) {
+            encoding.writeVarUint(encoder, num);
+        }
+        encodedNums = encoding.toByteArray(encoder);
+        encoder = encoding.createEncoder();
+        for (String str : strs) {
+            encoding.writeVarString(encoder, str);
+        }
+        encodedStrs = encoding.toByteArray(encoder);
+        directStrs = ByteBuffer.allocateDirect(encodedStrs.length);
+        directStrs.put(encodedStrs).flip();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public byte[] writeVarUint() {
+        Encoder encoder = encoding.createEncoder();
+        for (int num : nums) {
+            encoding.writeVarUint(encoder, num);
+        }
+        return encoding.toByteArray(encoder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public byte[] writeVarUintLegacy() {
+        Encoder encoder = encoding.createEncoder();
+        for (int num : nums) {
+            Lib0Legacy.writeVarUint(encoder, num);
+        }
+        return encoding.toByteArray(encoder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public byte[] writeVarString() {
+        Encoder encoder = encoding.createEncoder();
+        for (String str : strs) {
+            encoding.writeVarString(encoder, str);
+        }
+        return encoding.toByteArray(encoder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public byte[] writeVarStringLegacy() {
+        Encoder encoder = encoding.createEncoder();
+        for (String str : strs) {
+            Lib0Legacy.writeVarString(encoder, str);
+        }
+        return encoding.toByteArray(encoder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void readVarUint(Blackhole bh) {
+        Decoder decoder = decoding.createDecoder(encodedNums);
+        for (int i = 0; i < N; i++) {
+            bh.consume(decoding.readVarUint(decoder));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void readVarUintLegacy(Blackhole bh) {
+        Decoder decoder = decoding.createDecoder(encodedNums);
+        for (int i = 0; i < N; i++) {
+            bh.consume(Lib0Legacy.readVarUint(decoder));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void readVarString(Blackhole bh) {
+        Decoder decoder = decoding.createDecoder(encodedStrs);
+        for (int i = 0; i < N; i++) {
+            bh.consume(decoding.readVarString(decoder));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void readVarStringDirect(Blackhole bh) {
+        Decoder decoder = decoding.createDecoder(directStrs);
+        for (int i = 0; i < N; i++) {
+            bh.consume(decoding.readVarString(decoder));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(N)
+    public void readVarStringDirectLegacy(Blackhole bh) {
+        Decoder decoder = decoding.createDecoder(directStrs);
+        for (int i = 0; i < N; i++) {
+            bh.consume(Lib0Legacy.readVarString(decoder));
+        }
+    }
+}
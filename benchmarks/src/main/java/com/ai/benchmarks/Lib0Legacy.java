@@ -0,0 +1,53 @@
+package com.ai.benchmarks;
+
+import com.ai.myutils.binary;
+import com.ai.myutils.decoder.Decoder;
+import com.ai.myutils.decoder.decoding;
+import com.ai.myutils.encoder.Encoder;
+import com.ai.myutils.encoder.encoding;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The previous varint/string routines of lib0 encoding/decoding, kept as the baseline of {@link Lib0Benchmark}.
+ */
+final class Lib0Legacy {
+    private Lib0Legacy() {
+    }
+
+    static void writeVarUint(Encoder encoder, int num) {
+        while (num > binary.BITS7) {
+            encoding.write(encoder, binary.BIT8 | (binary.BITS7 & num));
+            num = num / 128;
+        }
+        encoding.write(encoder, binary.BITS7 & num);
+    }
+
+    static void writeVarString(Encoder encoder, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarUint(encoder, bytes.length);
+        encoding.writeUint8Array(encoder, bytes);
+    }
+
+    static int readVarUint(Decoder decoder) {
+        int num = 0;
+        int mult = 1;
+        while (decoding.hasContent(decoder)) {
+            int r = decoding.readUint8(decoder);
+            num = num + (r & binary.BITS7) * mult;
+            mult *= 128;
+            if (r < binary.BIT8) {
+                return num;
+            }
+        }
+        throw new RuntimeException("Unexpected end of array");
+    }
+
+    /**
+     * Strings in direct/mapped buffers were decoded through a {@link java.nio.charset.CharsetDecoder}.
+     */
+    static String readVarString(Decoder decoder) {
+        int len = readVarUint(decoder);
+        return StandardCharsets.UTF_8.decode(decoding.readUint8View(decoder, len)).toString();
+    }
+}
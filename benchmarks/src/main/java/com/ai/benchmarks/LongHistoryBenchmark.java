@@ -0,0 +1,102 @@
+package com.ai.benchmarks;
+
+import com.ai.Y;
+import com.ai.myutils.Uint8Array;
+import com.ai.structs.AbstractStruct;
+import com.ai.types.ytext.YText;
+import com.ai.utils.Doc;
+import com.ai.utils.Transaction;
+import com.ai.utils.structstore.StructStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Y.applyUpdate on a long single-client history, and the clock lookups behind it.
+ * <ul>
+ * <li>{@code applyUpdate}: the whole document into a fresh one</li>
+ * <li>{@code applyIncrementalUpdates}: every update as emitted by the editing client, in order</li>
+ * <li>{@code applyBatchedUpdates}: the same updates through Y.applyUpdates, {@value #BATCH} per transaction</li>
+ * <li>{@code findIndexSS*}: looking up every clock in order, in the store's list
+ * and in an ArrayList copy that takes the plain interpolation search</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LongHistoryBenchmark {
+    static final int BATCH = 100;
+
+    @Param({"10000", "30000"})
+    public int edits;
+
+    byte[] docUpdate;
+    List<byte[]> updates;
+    List<AbstractStruct> structs;
+    List<AbstractStruct> arrayListStructs;
+    int state;
+
+    @Setup
+    public void setup() {
+        Doc source = new Doc();
+        List<byte[]> emitted = new ArrayList<>();
+        source.<int[], Object, Doc, Transaction>on("update", (update, origin, d, t) -> emitted.add(Uint8Array.toByteArray(update)));
+        YText text = source.getText("text");
+        for (Traces.Edit edit : Traces.typing(11, edits)) {
+            Traces.apply(text, edit);
+        }
+        updates = emitted;
+        docUpdate = Y.encodeStateAsUpdateBytes(source);
+        structs = source.store.clients.get(source.clientID);
+        arrayListStructs = new ArrayList<>(structs);
+        state = StructStore.getState(source.store, source.clientID);
+    }
+
+    @Benchmark
+    public Doc applyUpdate() {
+        Doc doc = new Doc();
+        Y.applyUpdate(doc, docUpdate);
+        return doc;
+    }
+
+    @Benchmark
+    public Doc applyIncrementalUpdates() {
+        Doc doc = new Doc();
+        for (byte[] update : updates) {
+            Y.applyUpdate(doc, update);
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public Doc applyBatchedUpdates() {
+        Doc doc = new Doc();
+        for (int i = 0; i < updates.size(); i += BATCH) {
+            Y.applyUpdates(doc, updates.subList(i, Math.min(i + BATCH, updates.size())));
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public int findIndexSS() {
+        return findAll(structs);
+    }
+
+    @Benchmark
+    public int findIndexSSArrayList() {
+        return findAll(arrayListStructs);
+    }
+
+    private int findAll(List<AbstractStruct> structs) {
+        int sum = 0;
+        for (int clock = 0; clock < state; clock++) {
+            sum += StructStore.findIndexSS(structs, clock);
+        }
+        return sum;
+    }
+}
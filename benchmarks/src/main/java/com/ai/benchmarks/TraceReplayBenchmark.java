@@ -0,0 +1,155 @@
+package com.ai.benchmarks;
+
+import com.ai.Y;
+import com.ai.types.ytext.YText;
+import com.ai.utils.Doc;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a whole editing trace (automerge-perf style) into one YText, then encodes the document
+ * as V1 and V2 update and loads both into fresh documents.
+ * <p>
+ * {@code trace} is the path of a recorded trace, see {@link Traces#load} for the formats.
+ * When empty, a synthetic typing session of {@code ops} edits is replayed instead.
+ * {@code ops} limits how many edits of a recorded trace are replayed, {@code -p ops=0} replays all of it.
+ * <p>
+ * The score is the time of a whole invocation, forced GCs included. The {@link Metrics} counters report
+ * ops/sec of the replay alone, peak heap, heap retained by the final document and the encoded sizes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class TraceReplayBenchmark {
+    @Param({""})
+    public String trace;
+
+    @Param({"50000"})
+    public int ops;
+
+    List<Traces.Edit> edits;
+    String expected;
+
+    @Setup
+    public void setup() throws IOException {
+        if (trace.isEmpty()) {
+            edits = Traces.typing(5, ops);
+        } else {
+            edits = Traces.load(Paths.get(trace));
+            if (ops > 0 && ops < edits.size()) {
+                edits = edits.subList(0, ops);
+            }
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Traces.Edit edit : edits) {
+            sb.delete(edit.pos, edit.pos + edit.del);
+            sb.insert(edit.pos, edit.ins);
+        }
+        expected = sb.toString();
+    }
+
+    /**
+     * Per-iteration results. Sizes are in bytes.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Metrics {
+        public double opsPerSec;
+        public long peakHeapBytes;
+        public long retainedHeapBytes;
+        public long v1Bytes;
+        public long v2Bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            opsPerSec = 0;
+            peakHeapBytes = 0;
+            retainedHeapBytes = 0;
+            v1Bytes = 0;
+            v2Bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public Doc replay(Metrics metrics) {
+        long baseline = usedHeapAfterGc();
+        resetPeaks();
+
+        long start = System.nanoTime();
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        for (Traces.Edit edit : edits) {
+            Traces.apply(text, edit);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        byte[] v1 = Y.encodeStateAsUpdateBytes(doc);
+        byte[] v2 = Y.encodeStateAsUpdateV2Bytes(doc);
+        Doc fromV1 = new Doc();
+        Y.applyUpdate(fromV1, v1);
+        Doc fromV2 = new Doc();
+        Y.applyUpdateV2(fromV2, v2);
+        check(text.toString());
+        check(fromV1.getText("text").toString());
+        check(fromV2.getText("text").toString());
+
+        metrics.peakHeapBytes = peakHeap();
+        fromV1 = null;
+        fromV2 = null;
+        metrics.retainedHeapBytes = Math.max(0, usedHeapAfterGc() - baseline);
+        metrics.opsPerSec = edits.size() * 1e9 / elapsed;
+        metrics.v1Bytes = v1.length;
+        metrics.v2Bytes = v2.length;
+        return doc;
+    }
+
+    private void check(String actual) {
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("replayed document diverges from the trace");
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Sum of the per-pool peaks, an upper bound of the real peak.
+     */
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
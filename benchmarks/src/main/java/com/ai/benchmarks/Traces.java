@@ -0,0 +1,145 @@
+package com.ai.benchmarks;
+
+import com.ai.types.ytext.YText;
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Editing traces, a trace is a list of text edits applied one after another.
+ */
+final class Traces {
+    private Traces() {
+    }
+
+    /**
+     * One edit, delete {@code del} chars at {@code pos} and insert {@code ins} there.
+     */
+    static final class Edit {
+        final int pos;
+        final int del;
+        final String ins;
+
+        Edit(int pos, int del, String ins) {
+            this.pos = pos;
+            this.del = del;
+            this.ins = ins;
+        }
+    }
+
+    /**
+     * A typing session of {@code n} single char edits: mostly typing at the cursor, some backspaces,
+     * the cursor jumps to a random position now and then. Deterministic for a given seed.
+     */
+    static List<Edit> typing(long seed, int n) {
+        Random rnd = new Random(seed);
+        List<Edit> edits = new ArrayList<>(n);
+        int len = 0;
+        int cursor = 0;
+        for (int i = 0; i < n; i++) {
+            if (rnd.nextInt(100) < 3) {
+                cursor = rnd.nextInt(len + 1);
+            }
+            if (cursor > 0 && rnd.nextInt(100) < 12) {
+                edits.add(new Edit(--cursor, 1, ""));
+                len--;
+            } else {
+                char c = rnd.nextInt(6) == 0 ? ' ' : (char) ('a' + rnd.nextInt(26));
+                edits.add(new Edit(cursor++, 0, String.valueOf(c)));
+                len++;
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * {@code n} single char inserts/deletes at uniformly random positions.
+     */
+    static List<Edit> random(long seed, int n) {
+        Random rnd = new Random(seed);
+        List<Edit> edits = new ArrayList<>(n);
+        int len = 0;
+        for (int i = 0; i < n; i++) {
+            if (len > 0 && rnd.nextInt(3) == 0) {
+                edits.add(new Edit(rnd.nextInt(len), 1, ""));
+                len--;
+            } else {
+                edits.add(new Edit(rnd.nextInt(len + 1), 0, String.valueOf((char) ('a' + rnd.nextInt(26)))));
+                len++;
+            }
+        }
+        return edits;
+    }
+
+    /**
+     * Load a recorded trace, optionally gzipped. Two formats are understood:
+     * <ul>
+     * <li>the editing-traces format: {@code {"txns": [{"patches": [[pos, del, "ins"], ...]}, ...]}}</li>
+     * <li>the automerge-perf format, a plain array of {@code [pos, del, "ins"...]} edits,
+     * possibly wrapped in JavaScript ({@code const edits = [...]})</li>
+     * </ul>
+     * Patches that insert several chars are kept as one edit.
+     */
+    static List<Edit> load(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        if (path.toString().endsWith(".gz")) {
+            bytes = gunzip(bytes);
+        }
+        String json = new String(bytes, StandardCharsets.UTF_8).trim();
+        List<Edit> edits = new ArrayList<>();
+        if (json.startsWith("{")) {
+            JSONObject trace = JSON.parseObject(json);
+            for (Object txn : trace.getJSONArray("txns")) {
+                for (Object patch : ((JSONObject) txn).getJSONArray("patches")) {
+                    edits.add(toEdit((JSONArray) patch));
+                }
+            }
+        } else {
+            JSONArray list = JSON.parseArray(json.substring(json.indexOf('['), json.lastIndexOf(']') + 1));
+            for (Object edit : list) {
+                edits.add(toEdit((JSONArray) edit));
+            }
+        }
+        return edits;
+    }
+
+    private static Edit toEdit(JSONArray patch) {
+        StringBuilder ins = new StringBuilder();
+        for (int i = 2; i < patch.size(); i++) {
+            ins.append(patch.getString(i));
+        }
+        return new Edit(patch.getIntValue(0), patch.getIntValue(1), ins.toString());
+    }
+
+    private static byte[] gunzip(byte[] bytes) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buf = new byte[8192];
+            for (int n; (n = in.read(buf)) > 0; ) {
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    static void apply(YText text, Edit edit) {
+        if (edit.del > 0) {
+            text.delete(edit.pos, edit.del);
+        }
+        if (!edit.ins.isEmpty()) {
+            text.insert(edit.pos, edit.ins);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ai.benchmarks;
+
+import com.ai.Y;
+import com.ai.types.YArray;
+import com.ai.types.ytext.YText;
+import com.ai.utils.Doc;
+import com.ai.utils.Transaction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Yjs crdt-benchmarks scenarios, every invocation starts from an empty document.
+ * <ul>
+ * <li>B1: one client typing sequentially</li>
+ * <li>B2: one client inserting/deleting at random positions</li>
+ * <li>B3: two clients editing concurrently; the pending updates are exchanged after a random
+ * quarter of the rounds (seeded, on average every 4th round) and after the last one</li>
+ * <li>B4: replaying an editing trace, see {@link Traces#typing}</li>
+ * </ul>
+ * Scores are the time of a whole scenario of {@code n} edits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class YjsBenchmark {
+    @Param({"1000", "10000"})
+    public int n;
+
+    List<Traces.Edit> randomEdits;
+    List<Traces.Edit> trace;
+    List<Traces.Edit> client1Edits;
+    List<Traces.Edit> client2Edits;
+
+    @Setup
+    public void setup() {
+        randomEdits = Traces.random(1, n);
+        trace = Traces.typing(2, n);
+        client1Edits = Traces.random(3, n / 2);
+        client2Edits = Traces.random(4, n / 2);
+    }
+
+    @Benchmark
+    public Doc b1Typing() {
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        for (int i = 0; i < n; i++) {
+            text.insert(i, String.valueOf((char) ('a' + i % 26)));
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public Doc b1ArrayAppend() {
+        Doc doc = new Doc();
+        YArray<Integer> array = doc.getArray("array");
+        for (int i = 0; i < n; i++) {
+            array.insert(i, Collections.singletonList(i));
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public Doc b2RandomEdits() {
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        for (Traces.Edit edit : randomEdits) {
+            Traces.apply(text, edit);
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public Doc b3TwoClients() {
+        Doc doc1 = new Doc();
+        Doc doc2 = new Doc();
+        List<int[]> pending1 = new ArrayList<>();
+        List<int[]> pending2 = new ArrayList<>();
+        doc1.<int[], Object, Doc, Transaction>on("update", (update, origin, d, t) -> {
+            if (origin != doc2) {
+                pending1.add(update);
+            }
+        });
+        doc2.<int[], Object, Doc, Transaction>on("update", (update, origin, d, t) -> {
+            if (origin != doc1) {
+                pending2.add(update);
+            }
+        });
+        YText text1 = doc1.getText("text");
+        YText text2 = doc2.getText("text");
+        Random rnd = new Random(5);
+        for (int i = 0; i < client1Edits.size(); i++) {
+            applyClamped(text1, client1Edits.get(i));
+            applyClamped(text2, client2Edits.get(i));
+            // sync every few rounds, so both clients edit concurrently in between
+            if (rnd.nextInt(4) == 0 || i == client1Edits.size() - 1) {
+                for (int[] update : pending1) {
+                    Y.applyUpdate(doc2, update, doc1);
+                }
+                for (int[] update : pending2) {
+                    Y.applyUpdate(doc1, update, doc2);
+                }
+                pending1.clear();
+                pending2.clear();
+            }
+        }
+        return doc1;
+    }
+
+    @Benchmark
+    public Doc b4Trace() {
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        for (Traces.Edit edit : trace) {
+            Traces.apply(text, edit);
+        }
+        return doc;
+    }
+
+    /**
+     * Random edits were generated for a single client, the concurrent document may be shorter or longer.
+     */
+    private static void applyClamped(YText text, Traces.Edit edit) {
+        int len = text.length();
+        int pos = Math.min(edit.pos, len);
+        if (edit.del > 0 && pos < len) {
+            text.delete(pos, 1);
+        } else if (!edit.ins.isEmpty()) {
+            text.insert(pos, edit.ins);
+        }
+    }
+}
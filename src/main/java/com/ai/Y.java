@@ -13,11 +13,14 @@ import com.ai.types.vo.UpdateMeta;
 import com.ai.types.ytext.YText;
 import com.ai.types.ytext.YTextUtils;
 import com.ai.utils.*;
+import com.ai.utils.codec.CodecFactory;
+import com.ai.utils.codec.UpdateFormat;
 import com.ai.utils.codec.decoder.UpdateDecoder;
 import com.ai.utils.codec.encoder.UpdateEncoder;
 import com.ai.utils.structstore.StructStore;
 import com.alibaba.fastjson.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
@@ -150,9 +153,49 @@ public class Y {
         Encoding.applyUpdate(ydoc, update, transactionOrigin);
     }
 
+    public static void applyUpdate(Doc ydoc, byte[] update) {
+        Encoding.applyUpdate(ydoc, update, null);
+    }
+    public static void applyUpdate(Doc ydoc, byte[] update, Object transactionOrigin) {
+        Encoding.applyUpdate(ydoc, update, transactionOrigin);
+    }
+
+    public static void applyUpdate(Doc ydoc, ByteBuffer update) {
+        Encoding.applyUpdate(ydoc, update, null);
+    }
+    public static void applyUpdate(Doc ydoc, ByteBuffer update, Object transactionOrigin) {
+        Encoding.applyUpdate(ydoc, update, transactionOrigin);
+    }
+
     public static void applyUpdateV2(Doc ydoc, int[] update) {
         Encoding.applyUpdateV2(ydoc, update);
     }
+    public static void applyUpdateV2(Doc ydoc, byte[] update) {
+        Encoding.applyUpdateV2(ydoc, update);
+    }
+    public static void applyUpdateV2(Doc ydoc, byte[] update, Object transactionOrigin) {
+        Encoding.applyUpdateV2(ydoc, update, transactionOrigin);
+    }
+    public static void applyUpdateV2(Doc ydoc, ByteBuffer update) {
+        Encoding.applyUpdateV2(ydoc, update, null, null);
+    }
+    public static void applyUpdateV2(Doc ydoc, ByteBuffer update, Object transactionOrigin) {
+        Encoding.applyUpdateV2(ydoc, update, transactionOrigin, null);
+    }
+
+    public static void applyUpdates(Doc ydoc, List<byte[]> updates) {
+        Encoding.applyUpdates(ydoc, updates, null, UpdateFormat.V1);
+    }
+    public static void applyUpdates(Doc ydoc, List<byte[]> updates, Object transactionOrigin) {
+        Encoding.applyUpdates(ydoc, updates, transactionOrigin, UpdateFormat.V1);
+    }
+
+    public static void applyUpdatesV2(Doc ydoc, List<byte[]> updates) {
+        Encoding.applyUpdates(ydoc, updates, null, UpdateFormat.V2);
+    }
+    public static void applyUpdatesV2(Doc ydoc, List<byte[]> updates, Object transactionOrigin) {
+        Encoding.applyUpdates(ydoc, updates, transactionOrigin, UpdateFormat.V2);
+    }
 
     public static void readUpdate(Decoder decoder, Doc ydoc, Object transactionOrigin) {
         Encoding.readUpdate(decoder, ydoc, transactionOrigin);
@@ -185,6 +228,25 @@ public class Y {
         return Encoding.encodeStateVector(doc);
     }
 
+    // byte[] variants of the update encoders, these skip the int[] "Uint8Array" conversion
+    public static byte[] encodeStateAsUpdateBytes(Doc doc) {
+        return Encoding.encodeStateAsUpdateBytes(doc, null);
+    }
+    public static byte[] encodeStateAsUpdateBytes(Doc doc, byte[] encodedTargetStateVector) {
+        return Encoding.encodeStateAsUpdateBytes(doc, encodedTargetStateVector);
+    }
+
+    public static byte[] encodeStateAsUpdateV2Bytes(Doc doc) {
+        return Encoding.encodeStateAsUpdateV2Bytes(doc, null, null);
+    }
+    public static byte[] encodeStateAsUpdateV2Bytes(Doc doc, byte[] encodedTargetStateVector) {
+        return Encoding.encodeStateAsUpdateV2Bytes(doc, encodedTargetStateVector, null);
+    }
+
+    public static byte[] encodeStateVectorBytes(Doc doc) {
+        return Encoding.encodeStateVectorBytes(doc);
+    }
+
     // Snapshot encoding/decoding
     public static Snapshot decodeSnapshot(int[] data) {
         return Snapshot.decodeSnapshot(data);
@@ -202,7 +264,11 @@ public class Y {
         return Snapshot.encodeSnapshotV2(snapshot, encoder);
     }
 
-    public static Map<Integer, Integer> decodeStateVector(int[] data) {
+    public static StateVector decodeStateVector(int[] data) {
+        return Encoding.decodeStateVector(data);
+    }
+
+    public static StateVector decodeStateVector(byte[] data) {
         return Encoding.decodeStateVector(data);
     }
 
@@ -212,18 +278,38 @@ public class Y {
     }
 
     public static void logUpdateV2(int[] update) {
-        Updates.logUpdateV2(update, null);
+        Updates.logUpdateV2(update, UpdateFormat.V2);
+    }
+    public static void logUpdateV2(int[] update, CodecFactory decoderFactory) {
+        Updates.logUpdateV2(update, decoderFactory);
     }
+
+    /**
+     * @deprecated use {@link #logUpdateV2(int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static void logUpdateV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
-        Updates.logUpdateV2(update, decoderClass);
+        logUpdateV2(update, decoderClass == null ? null : UpdateFormat.of(decoderClass));
     }
 
     public static DecodedUpdate decodeUpdate(int[] update) {
         return Updates.decodeUpdate(update);
     }
 
+    public static DecodedUpdate decodeUpdateV2(int[] update, CodecFactory decoderFactory) {
+        return Updates.decodeUpdateV2(update, decoderFactory);
+    }
+
+    /**
+     * @deprecated use {@link #decodeUpdateV2(int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static DecodedUpdate decodeUpdateV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
-        return Updates.decodeUpdateV2(update, decoderClass);
+        return decodeUpdateV2(update, decoderClass == null ? null : UpdateFormat.of(decoderClass));
+    }
+
+    public static DecodedUpdate decodeUpdate(byte[] update) {
+        return Updates.decodeUpdate(update);
     }
 
     // Position conversion
@@ -271,13 +357,33 @@ public class Y {
         return Updates.mergeUpdatesV2(updates);
     }
 
+    public static byte[] mergeUpdatesBytes(List<byte[]> updates) {
+        return Updates.mergeUpdatesBytes(updates);
+    }
+
+    public static byte[] mergeUpdatesV2Bytes(List<byte[]> updates) {
+        return Updates.mergeUpdatesV2Bytes(updates);
+    }
+
     // Update metadata
     public static UpdateMeta parseUpdateMeta(int[] update) {
         return Updates.parseUpdateMeta(update);
     }
 
+    public static UpdateMeta parseUpdateMetaV2(int[] update, CodecFactory decoderFactory) {
+        return Updates.parseUpdateMetaV2(update, decoderFactory);
+    }
+
+    /**
+     * @deprecated use {@link #parseUpdateMetaV2(int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static UpdateMeta parseUpdateMetaV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
-        return Updates.parseUpdateMetaV2(update, decoderClass);
+        return parseUpdateMetaV2(update, decoderClass == null ? null : UpdateFormat.of(decoderClass));
+    }
+
+    public static UpdateMeta parseUpdateMeta(byte[] update) {
+        return Updates.parseUpdateMeta(update);
     }
 
     // State vector from update
@@ -289,6 +395,14 @@ public class Y {
         return Updates.encodeStateVectorFromUpdateV2(update);
     }
 
+    public static byte[] encodeStateVectorFromUpdate(byte[] update) {
+        return Updates.encodeStateVectorFromUpdate(update);
+    }
+
+    public static byte[] encodeStateVectorFromUpdateV2(byte[] update) {
+        return Updates.encodeStateVectorFromUpdateV2(update);
+    }
+
     // Relative position encoding
     public static int[] encodeRelativePosition(RelativePosition pos) {
         return RelativePosition.encodeRelativePosition(pos);
@@ -307,6 +421,14 @@ public class Y {
         return Updates.diffUpdateV2(update, stateVector);
     }
 
+    public static byte[] diffUpdate(byte[] update, byte[] stateVector) {
+        return Updates.diffUpdate(update, stateVector);
+    }
+
+    public static byte[] diffUpdateV2(byte[] update, byte[] stateVector) {
+        return Updates.diffUpdateV2(update, stateVector);
+    }
+
     // Update format conversion
     public static int[] convertUpdateFormatV1ToV2(int[] update) {
         return Updates.convertUpdateFormatV1ToV2(update);
@@ -316,6 +438,14 @@ public class Y {
         return Updates.convertUpdateFormatV2ToV1(update);
     }
 
+    public static byte[] convertUpdateFormatV1ToV2(byte[] update) {
+        return Updates.convertUpdateFormatV1ToV2(update);
+    }
+
+    public static byte[] convertUpdateFormatV2ToV1(byte[] update) {
+        return Updates.convertUpdateFormatV2ToV1(update);
+    }
+
     // Update obfuscation
     public static int[] obfuscateUpdate(int[] update) {
         return Updates.obfuscateUpdate(update, null);
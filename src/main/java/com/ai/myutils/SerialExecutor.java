@@ -0,0 +1,57 @@
+package com.ai.myutils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+
+/**
+ * 在另一个Executor上按提交顺序逐个执行任务, 同一时间最多有一个任务在运行.
+ * 任务抛出的异常只记录, 不影响后续任务.
+ */
+public class SerialExecutor implements Executor {
+    private final Executor executor;
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean running;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            tasks.add(task);
+            if (running) {
+                return;
+            }
+            running = true;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                tasks.clear();
+                running = false;
+            }
+            throw e;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                task = tasks.poll();
+                if (task == null) {
+                    running = false;
+                    return;
+                }
+            }
+            try {
+                task.run();
+            } catch (Throwable error) {
+                System.err.println("观察者执行出错: " + error);
+            }
+        }
+    }
+}
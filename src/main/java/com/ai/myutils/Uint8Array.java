@@ -1,9 +1,14 @@
 package com.ai.myutils;
 
+import java.util.ArrayList;
+import java.util.List;
 
 public class Uint8Array {
 
     public static int[] toIntArray(byte[] update) {
+        if (update == null) {
+            return null;
+        }
         int[] data = new int[update.length];
         for (int i = 0; i < update.length; i++) {
             data[i] = Byte.toUnsignedInt(update[i]);
@@ -12,6 +17,9 @@ public class Uint8Array {
     }
 
     public static byte[] toByteArray(int[] update) {
+        if (update == null) {
+            return null;
+        }
         byte[] data = new byte[update.length];
         for (int i = 0; i < update.length; i++) {
             data[i] = (byte) update[i];
@@ -19,6 +27,14 @@ public class Uint8Array {
         return data;
     }
 
+    public static List<byte[]> toByteArrays(List<int[]> updates) {
+        List<byte[]> data = new ArrayList<>(updates.size());
+        for (int[] update : updates) {
+            data.add(toByteArray(update));
+        }
+        return data;
+    }
+
     public static void printUint8Array(int[] array) {
         System.out.print("Uint8Array(" + array.length + ") [");
         if (array.length == 0) {
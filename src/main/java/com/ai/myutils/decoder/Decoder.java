@@ -1,24 +1,65 @@
 package com.ai.myutils.decoder;
 
 
-import java.util.Arrays;
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
 
 /**
  * A Decoder handles the decoding of an Uint8Array.
+ * <p>
+ * The data is read in place, either from a byte[] (one byte per element, read back as unsigned)
+ * or, for direct and memory-mapped buffers, from a {@link ByteBuffer}. Exactly one of {@link #arr}
+ * and {@link #buf} is set. {@link #pos} and {@link #end} are absolute indexes into that storage.
+ * The int[] constructor is only an adapter for callers that still hold "Uint8Array" int[] buffers.
  */
 public class Decoder {
-    public int[] arr;
+    public byte[] arr;
+    public ByteBuffer buf;
     public int pos;
+    public int end;
 
     /**
      * @param uint8Array {Uint8Array}  Binary data to decode
      */
-    public Decoder(int[] uint8Array) {
+    public Decoder(byte[] uint8Array) {
+        this(uint8Array, 0, uint8Array.length);
+    }
+
+    /**
+     * Decode `length` bytes of `uint8Array` starting at `offset`, without copying them.
+     */
+    public Decoder(byte[] uint8Array, int offset, int length) {
         // Decoding target.
         this.arr = uint8Array;
         // Current decoding position.
-        this.pos = 0;
+        this.pos = offset;
+        this.end = offset + length;
     }
 
-}
+    /**
+     * Decode the remaining bytes of `buffer` (position to limit) in place.
+     * The position of `buffer` is not modified. Heap buffers are read through their backing array,
+     * direct and {@link java.nio.MappedByteBuffer}s are read with absolute gets, so nothing is copied onto the heap.
+     * The buffer must not be modified while it is decoded.
+     */
+    public Decoder(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            this.arr = buffer.array();
+            this.pos = buffer.arrayOffset() + buffer.position();
+            this.end = buffer.arrayOffset() + buffer.limit();
+        } else {
+            this.buf = buffer;
+            this.pos = buffer.position();
+            this.end = buffer.limit();
+        }
+    }
+
+    /**
+     * @param uint8Array {Uint8Array}  Binary data to decode, one unsigned byte per element
+     */
+    public Decoder(int[] uint8Array) {
+        this(Uint8Array.toByteArray(uint8Array));
+    }
 
+}
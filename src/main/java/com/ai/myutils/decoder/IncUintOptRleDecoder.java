@@ -1,7 +1,10 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
 import com.ai.myutils.binary;
 
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.readVarInt;
 import static com.ai.myutils.decoder.decoding.readVarUint;
 
@@ -9,16 +12,24 @@ public class IncUintOptRleDecoder extends Decoder {
     private long s;
     private int count;
 
-    public IncUintOptRleDecoder(int[] uint8Array) {
+    public IncUintOptRleDecoder(ByteBuffer uint8Array) {
         super(uint8Array);
         this.s = 0;
         this.count = 0;
     }
 
+    public IncUintOptRleDecoder(byte[] uint8Array) {
+        this(ByteBuffer.wrap(uint8Array));
+    }
+
+    public IncUintOptRleDecoder(int[] uint8Array) {
+        this(Uint8Array.toByteArray(uint8Array));
+    }
+
     public long read() {
         if (this.count == 0) {
             this.s = readVarInt(this);
-            boolean isNegative = (this.arr[this.pos] & binary.BIT7) > 0;  // Java中不能直接用<0判断负数
+            boolean isNegative = (decoding.getUint8(this, this.pos) & binary.BIT7) > 0;  // Java中不能直接用<0判断负数
             this.count = 1;
             if (isNegative) {
                 this.s = -this.s;
@@ -1,15 +1,27 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.readVarInt;
 
 public class IntDiffDecoder extends Decoder {
     private long s;
 
-    public IntDiffDecoder(int[] uint8Array, long start) {
+    public IntDiffDecoder(ByteBuffer uint8Array, long start) {
         super(uint8Array);
         this.s = start;
     }
 
+    public IntDiffDecoder(byte[] uint8Array, long start) {
+        this(ByteBuffer.wrap(uint8Array), start);
+    }
+
+    public IntDiffDecoder(int[] uint8Array, long start) {
+        this(Uint8Array.toByteArray(uint8Array), start);
+    }
+
     public long read() {
         this.s += readVarInt(this);
         return this.s;
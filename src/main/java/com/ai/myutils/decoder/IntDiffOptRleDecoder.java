@@ -1,5 +1,9 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.readVarInt;
 import static com.ai.myutils.decoder.decoding.readVarUint;
 
@@ -8,18 +12,26 @@ public class IntDiffOptRleDecoder extends Decoder {
     private int count;
     private long diff;
 
-    public IntDiffOptRleDecoder(int[] uint8Array) {
+    public IntDiffOptRleDecoder(ByteBuffer uint8Array) {
         super(uint8Array);
         this.s = 0;
         this.count = 0;
         this.diff = 0;
     }
 
+    public IntDiffOptRleDecoder(byte[] uint8Array) {
+        this(ByteBuffer.wrap(uint8Array));
+    }
+
+    public IntDiffOptRleDecoder(int[] uint8Array) {
+        this(Uint8Array.toByteArray(uint8Array));
+    }
+
     public long read() {
         if (this.count == 0) {
             long diff = readVarInt(this);
             boolean hasCount = (diff & 1) != 0;
-            this.diff = diff / 2;  // 相当于右移1位
+            this.diff = diff >> 1;  // 向下取整, 与 Math.floor(diff / 2) 一致
             this.count = 1;
             if (hasCount) {
                 this.count = (int)readVarUint(this) + 2;
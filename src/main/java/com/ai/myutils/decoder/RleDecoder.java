@@ -1,5 +1,8 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
 import java.util.function.Function;
 
 import static com.ai.myutils.decoder.decoding.hasContent;
@@ -10,13 +13,21 @@ public class RleDecoder<T> extends Decoder {
     private T s;
     private int count;
 
-    public RleDecoder(int[] uint8Array, Function<Decoder, T> reader) {
+    public RleDecoder(ByteBuffer uint8Array, Function<Decoder, T> reader) {
         super(uint8Array);
         this.reader = reader;
         this.s = null;
         this.count = 0;
     }
 
+    public RleDecoder(byte[] uint8Array, Function<Decoder, T> reader) {
+        this(ByteBuffer.wrap(uint8Array), reader);
+    }
+
+    public RleDecoder(int[] uint8Array, Function<Decoder, T> reader) {
+        this(Uint8Array.toByteArray(uint8Array), reader);
+    }
+
     public T read() {
         if (this.count == 0) {
             this.s = this.reader.apply(this);
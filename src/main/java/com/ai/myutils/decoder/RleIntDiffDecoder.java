@@ -1,17 +1,29 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.*;
 
 public class RleIntDiffDecoder extends Decoder {
     private long s;
     private int count;
 
-    public RleIntDiffDecoder(int[] uint8Array, long start) {
+    public RleIntDiffDecoder(ByteBuffer uint8Array, long start) {
         super(uint8Array);
         this.s = start;
         this.count = 0;
     }
 
+    public RleIntDiffDecoder(byte[] uint8Array, long start) {
+        this(ByteBuffer.wrap(uint8Array), start);
+    }
+
+    public RleIntDiffDecoder(int[] uint8Array, long start) {
+        this(Uint8Array.toByteArray(uint8Array), start);
+    }
+
     public long read() {
         if (this.count == 0) {
             this.s += readVarInt(this);
@@ -1,5 +1,9 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
+
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.readVarString;
 
 public class StringDecoder {
@@ -7,12 +11,20 @@ public class StringDecoder {
     private final String str;
     private int spos;
 
-    public StringDecoder(int[] uint8Array) {
+    public StringDecoder(ByteBuffer uint8Array) {
         this.decoder = new UintOptRleDecoder(uint8Array);
         this.str = readVarString(this.decoder);
         this.spos = 0;
     }
 
+    public StringDecoder(byte[] uint8Array) {
+        this(ByteBuffer.wrap(uint8Array));
+    }
+
+    public StringDecoder(int[] uint8Array) {
+        this(Uint8Array.toByteArray(uint8Array));
+    }
+
     public String read() {
         int end = this.spos + this.decoder.read();
         String res = this.str.substring(this.spos, end);
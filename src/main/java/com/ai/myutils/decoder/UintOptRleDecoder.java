@@ -1,7 +1,10 @@
 package com.ai.myutils.decoder;
 
+import com.ai.myutils.Uint8Array;
 import com.ai.myutils.binary;
 
+import java.nio.ByteBuffer;
+
 import static com.ai.myutils.decoder.decoding.readVarInt;
 import static com.ai.myutils.decoder.decoding.readVarUint;
 
@@ -9,16 +12,25 @@ public class UintOptRleDecoder extends Decoder {
     private int s;
     public int count;
 
-    public UintOptRleDecoder(int[] uint8Array) {
+    public UintOptRleDecoder(ByteBuffer uint8Array) {
         super(uint8Array);
         this.s = 0;
         this.count = 0;
     }
 
+    public UintOptRleDecoder(byte[] uint8Array) {
+        this(ByteBuffer.wrap(uint8Array));
+    }
+
+    public UintOptRleDecoder(int[] uint8Array) {
+        this(Uint8Array.toByteArray(uint8Array));
+    }
+
     public int read() {
         if (this.count == 0) {
+            // the sign bit is in the first byte of the varint, it also marks -0
+            boolean isNegative = (decoding.getUint8(this, this.pos) & binary.BIT7) > 0;
             this.s = readVarInt(this);
-            boolean isNegative = (this.arr[this.pos-1] & binary.BIT7) > 0;
             this.count = 1;
             if (isNegative) {
                 this.s = -this.s;
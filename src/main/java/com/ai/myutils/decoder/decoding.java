@@ -6,15 +6,14 @@ import com.ai.myutils.encoder.Encoder;
 import com.ai.myutils.encoder.encoding;
 
 import java.math.BigInteger;
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.function.Function;
 
 import static com.ai.myutils.Printer.print;
 import static com.ai.myutils.Uint8Array.*;
-import static jdk.nashorn.internal.runtime.GlobalFunctions.decodeURIComponent;
-import static jdk.nashorn.internal.runtime.GlobalFunctions.escape;
 
 /**
  * Efficient schema-less binary decoding with support for variable length encoding.
@@ -51,6 +50,27 @@ public class decoding {
      * @param uint8Array {Uint8Array} 
      * @return {Decoder}
      */
+    public static Decoder createDecoder(byte[] uint8Array) {
+        return new Decoder(uint8Array);
+    }
+
+    /**
+     * Create a decoder that reads the remaining bytes of `buffer` in place (zero-copy).
+     * Works for heap, direct and memory-mapped buffers. The buffer position is not modified.
+     *
+     * @param buffer {ByteBuffer}
+     * @return {Decoder}
+     */
+    public static Decoder createDecoder(ByteBuffer buffer) {
+        return new Decoder(buffer);
+    }
+
+    /**
+     * Adapter for int[] "Uint8Array" buffers (one unsigned byte per element).
+     *
+     * @param uint8Array {Uint8Array}
+     * @return {Decoder}
+     */
     public static Decoder createDecoder(int[] uint8Array) {
         return new Decoder(uint8Array);
     }
@@ -60,7 +80,18 @@ public class decoding {
      * @return {boolean}
      */
     public static boolean hasContent(Decoder decoder) {
-        return decoder.pos != decoder.arr.length;
+        return decoder.pos != decoder.end;
+    }
+
+    /**
+     * Read the byte at the absolute index `index` as unsigned integer, without moving the position.
+     */
+    static int getUint8(Decoder decoder, int index) {
+        // decoders may be views into a larger array, so the array bounds are not the decoder bounds
+        if (index >= decoder.end) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (decoder.arr != null ? decoder.arr[index] : decoder.buf.get(index)) & binary.BITS8;
     }
 
 
@@ -76,7 +107,10 @@ public class decoding {
         if (newPos == null) {
             newPos = decoder.pos;
         }
-        Decoder _decoder = createDecoder(decoder.arr);
+        Decoder _decoder = decoder.arr != null
+                ? new Decoder(decoder.arr, 0, decoder.end)
+                : new Decoder(decoder.buf);
+        _decoder.end = decoder.end;
         _decoder.pos = newPos;
         return _decoder;
     }
@@ -93,11 +127,75 @@ public class decoding {
      */
     public static int[] readUint8Array(Decoder decoder, Integer len) {
         int[] view = new int[len];
-        System.arraycopy(decoder.arr, decoder.pos, view, 0, len);
+        for (int i = 0; i < len; i++) {
+            view[i] = getUint8(decoder, decoder.pos + i);
+        }
+        decoder.pos += len;
+        return view;
+    }
+
+    /**
+     * Read the next `len` bytes as byte[] and advance the position by `len`.
+     * Throws if fewer than `len` bytes are left before the end of the decoder.
+     *
+     * @param decoder {Decoder} The decoder instance
+     * @param len {number}  The length of bytes to read
+     * @return {byte[]}
+     */
+    public static byte[] readBytes(Decoder decoder, int len) {
+        if (len < 0 || len > decoder.end - decoder.pos) {
+            throw errorUnexpectedEndOfArray;
+        }
+        byte[] view;
+        if (decoder.arr != null) {
+            view = Arrays.copyOfRange(decoder.arr, decoder.pos, decoder.pos + len);
+        } else {
+            view = new byte[len];
+            ByteBuffer src = decoder.buf.duplicate();
+            src.position(decoder.pos);
+            src.get(view);
+        }
         decoder.pos += len;
         return view;
     }
 
+    /**
+     * Create a ByteBuffer view of the next `len` bytes and advance the position by `len`.
+     * Throws if fewer than `len` bytes are left before the end of the decoder, the view never reaches past it.
+     * <p>
+     * Important: The view still points to the underlying storage of the decoder (no copy is made).
+     * Make sure to discard the result as soon as possible, or copy it with {@link #readBytes}.
+     *
+     * @param decoder {Decoder} The decoder instance
+     * @param len {number}  The length of bytes to read
+     * @return {ByteBuffer}
+     */
+    public static ByteBuffer readUint8View(Decoder decoder, int len) {
+        if (len < 0 || len > decoder.end - decoder.pos) {
+            throw errorUnexpectedEndOfArray;
+        }
+        ByteBuffer view;
+        if (decoder.arr != null) {
+            view = ByteBuffer.wrap(decoder.arr, decoder.pos, len).slice();
+        } else {
+            ByteBuffer src = decoder.buf.duplicate();
+            src.limit(decoder.pos + len).position(decoder.pos);
+            view = src.slice();
+        }
+        decoder.pos += len;
+        return view;
+    }
+
+    /**
+     * Read variable length Uint8Array as a view of the decoder storage, see {@link #readUint8View}.
+     *
+     * @param decoder {Decoder}
+     * @return {ByteBuffer}
+     */
+    public static ByteBuffer readVarUint8View(Decoder decoder) {
+        return readUint8View(decoder, readVarUint(decoder));
+    }
+
     /**
      * Read variable length Uint8Array.
      * <p>
@@ -111,6 +209,16 @@ public class decoding {
         return readUint8Array(decoder, readVarUint(decoder));
     }
 
+    /**
+     * Read variable length byte[].
+     *
+     * @param decoder {Decoder}
+     * @return {byte[]}
+     */
+    public static byte[] readVarBytes(Decoder decoder) {
+        return readBytes(decoder, readVarUint(decoder));
+    }
+
     /**
      * Read the rest of the content as an ArrayBuffer
      *
@@ -118,7 +226,17 @@ public class decoding {
      * @return {int[]}
      */
     public static int[] readTailAsUint8Array(Decoder decoder) {
-        return readUint8Array(decoder, decoder.arr.length - decoder.pos);
+        return readUint8Array(decoder, decoder.end - decoder.pos);
+    }
+
+    /**
+     * Read the rest of the content as byte[]
+     *
+     * @param decoder {Decoder}
+     * @return {byte[]}
+     */
+    public static byte[] readTailAsBytes(Decoder decoder) {
+        return readBytes(decoder, decoder.end - decoder.pos);
     }
 
     /**
@@ -138,7 +256,7 @@ public class decoding {
      * @return {number} Unsigned 8-bit integer
      */
     public static int readUint8(Decoder decoder) {
-        return decoder.arr[decoder.pos++];
+        return getUint8(decoder, decoder.pos++);
     }
 
     /**
@@ -148,9 +266,7 @@ public class decoding {
      * @return {number} An unsigned integer.
      */
     public static Integer readUint16(Decoder decoder) {
-        Integer uint =
-                decoder.arr[decoder.pos] +
-                        (decoder.arr[decoder.pos + 1] << 8);
+        Integer uint = peekUint16(decoder);
         decoder.pos += 2;
         return uint;
     }
@@ -162,11 +278,7 @@ public class decoding {
      * @return {number} An unsigned integer.
      */
     public static Integer readUint32(Decoder decoder) {
-        Integer uint =
-                (decoder.arr[decoder.pos] +
-                        (decoder.arr[decoder.pos + 1] << 8) +
-                        (decoder.arr[decoder.pos + 2] << 16) +
-                        (decoder.arr[decoder.pos + 3] << 24));
+        Integer uint = peekUint32(decoder);
         decoder.pos += 4;
         return uint;
     }
@@ -180,10 +292,10 @@ public class decoding {
      */
     public static Integer readUint32BigEndian(Decoder decoder) {
         Integer uint =
-                (decoder.arr[decoder.pos + 3] +
-                        (decoder.arr[decoder.pos + 2] << 8) +
-                        (decoder.arr[decoder.pos + 1] << 16) +
-                        (decoder.arr[decoder.pos] << 24));
+                (getUint8(decoder, decoder.pos + 3) +
+                        (getUint8(decoder, decoder.pos + 2) << 8) +
+                        (getUint8(decoder, decoder.pos + 1) << 16) +
+                        (getUint8(decoder, decoder.pos) << 24));
         decoder.pos += 4;
         return uint;
     }
@@ -195,7 +307,7 @@ public class decoding {
      * @param decoder {Decoder}
      */
     public static int peekUint8(Decoder decoder) {
-        return decoder.arr[decoder.pos];
+        return getUint8(decoder, decoder.pos);
     }
 
     /**
@@ -206,8 +318,8 @@ public class decoding {
      * @return {number} An unsigned integer.
      */
     public static Integer peekUint16(Decoder decoder) {
-        return decoder.arr[decoder.pos] +
-                (decoder.arr[decoder.pos + 1] << 8);
+        return getUint8(decoder, decoder.pos) +
+                (getUint8(decoder, decoder.pos + 1) << 8);
     }
 
     /**
@@ -218,10 +330,10 @@ public class decoding {
      * @return {number} An unsigned integer.
      */
     public static Integer peekUint32(Decoder decoder) {
-        return (decoder.arr[decoder.pos] +
-                (decoder.arr[decoder.pos + 1] << 8) +
-                (decoder.arr[decoder.pos + 2] << 16) +
-                (decoder.arr[decoder.pos + 3] << 24));
+        return (getUint8(decoder, decoder.pos) +
+                (getUint8(decoder, decoder.pos + 1) << 8) +
+                (getUint8(decoder, decoder.pos + 2) << 16) +
+                (getUint8(decoder, decoder.pos + 3) << 24));
     }
 
     /**
@@ -234,14 +346,36 @@ public class decoding {
      * @return {number} An unsigned integer.length
      */
     public static int readVarUint(Decoder decoder) {
-        int num = 0;
-        int mult = 1;
-        int len = decoder.arr.length;
-        while (decoder.pos < len) {
-            int r = decoder.arr[decoder.pos++];
-            // num = num | ((r & binary.BITS7) << len)
-            num = num + (r & binary.BITS7) * mult; // shift $r << (7*#iterations) and add it to num
-            mult *= 128; // next iteration, shift 7 "more" to the left
+        byte[] arr = decoder.arr;
+        int pos = decoder.pos;
+        if (arr != null && decoder.end - pos >= 5) {
+            // there is room for the longest 32 bit encoding, so this is the only bounds check
+            int num = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int r = arr[pos++];
+                num |= (r & binary.BITS7) << shift;
+                if (r >= 0) {
+                    decoder.pos = pos;
+                    return num;
+                }
+            }
+            decoder.pos = pos;
+            return readVarUintTail(decoder, num, 35);
+        }
+        return readVarUintTail(decoder, 0, 0);
+    }
+
+    /**
+     * Continue reading a var uint whose first `shift / 7` bytes were read into `num`.
+     * Bits beyond 32 are dropped.
+     */
+    private static int readVarUintTail(Decoder decoder, int num, int shift) {
+        while (decoder.pos < decoder.end) {
+            int r = getUint8(decoder, decoder.pos++);
+            if (shift < 32) {
+                num |= (r & binary.BITS7) << shift;
+            }
+            shift += 7;
             if (r < binary.BIT8) {
                 return num;
             }
@@ -259,7 +393,7 @@ public class decoding {
      * @return {number}
      */
     public static int readVarInt(Decoder decoder) {
-        int r = decoder.arr[decoder.pos++];
+        int r = getUint8(decoder, decoder.pos++);
         int num = r & binary.BITS6;  // BITS6 = 0x3F
         long mult = 64;
         int sign = (r & binary.BIT7) > 0 ? -1 : 1;  // BIT7 = 0x40
@@ -268,9 +402,9 @@ public class decoding {
             return sign * num;
         }
 
-        final int len = decoder.arr.length;
+        final int len = decoder.end;
         while (decoder.pos < len) {
-            r = decoder.arr[decoder.pos++];
+            r = getUint8(decoder, decoder.pos++);
             num += (r & binary.BITS7) * mult;  // BITS7 = 0x7F
             mult *= 128;
 
@@ -312,79 +446,107 @@ public class decoding {
     }
 
     /**
-     * 读取可变长度字符串的备用实现（不使用UTF-8解码器时）
-     * We don't test this function anymore as we use native decoding/encoding by default now.
-     * Better not modify this anymore...
-     * <p>
-     * Transforming utf8 to a string is pretty expensive. The code performs 10x better
-     * when String.fromCodePoint is fed with all characters as arguments.
-     * But most environments have a maximum number of arguments per functions.
-     * For effiency reasons we apply a maximum of 10000 characters at once.
+     * 读取可变长度字符串, 逐字节解码UTF-8, 不依赖{@link StandardCharsets}
+     * 非法的UTF-8序列解码为U+FFFD
      *
      * @param decoder {Decoder} 解码器实例
      * @return 解码后的字符串
      */
     public static String _readVarStringPolyfill(Decoder decoder) {
-        int remainingLen = readVarUint(decoder);
-        if (remainingLen == 0) {
+        int len = readVarUint(decoder);
+        if (len == 0) {
             return "";
         }
-
-        // 初始读取第一个字符
-        StringBuilder encodedString = new StringBuilder();
-        encodedString.appendCodePoint(readUint8(decoder));
-        remainingLen--;
-
-        if (remainingLen < 100) {
-            // 小字符串直接逐个读取
-            while (remainingLen-- > 0) {
-                encodedString.appendCodePoint(readUint8(decoder));
+        int end = decoder.pos + len;
+        if (end > decoder.end || end < 0) {
+            throw errorUnexpectedEndOfArray;
+        }
+        byte[] arr = decoder.arr;
+        ByteBuffer buf = decoder.buf;
+        char[] chars = new char[len];
+        int n = 0;
+        int pos = decoder.pos;
+        // ascii prefix
+        for (int b; pos < end && (b = byteAt(arr, buf, pos)) >= 0; pos++) {
+            chars[n++] = (char) b;
+        }
+        while (pos < end) {
+            int b = byteAt(arr, buf, pos++) & binary.BITS8;
+            if (b < 0x80) {
+                chars[n++] = (char) b;
+                continue;
             }
-        } else {
-            // 大字符串分块处理（每块最多10000字符）
-            while (remainingLen > 0) {
-                int nextLen = Math.min(remainingLen, 10000);
-                int[] bytes = readUint8Array(decoder, nextLen);
-
-                // 批量处理字节数组
-                for (int b : bytes) {
-                    encodedString.appendCodePoint(b & 0xFF);
+            int extra;
+            int cp;
+            if (b >= 0xc2 && b < 0xe0) {
+                extra = 1;
+                cp = b & 0x1f;
+            } else if (b >= 0xe0 && b < 0xf0) {
+                extra = 2;
+                cp = b & 0x0f;
+            } else if (b >= 0xf0 && b < 0xf5) {
+                extra = 3;
+                cp = b & 0x07;
+            } else {
+                chars[n++] = '\uFFFD';
+                continue;
+            }
+            if (end - pos < extra) {
+                chars[n++] = '\uFFFD';
+                continue;
+            }
+            int p = pos;
+            for (int k = 0; k < extra; k++) {
+                int c = byteAt(arr, buf, p++);
+                if ((c & 0xc0) != 0x80) {
+                    cp = -1;
+                    break;
                 }
-
-                remainingLen -= nextLen;
+                cp = (cp << 6) | (c & 0x3f);
+            }
+            // reject overlong encodings, surrogates and code points above U+10FFFF
+            if (cp < 0 || (extra == 2 && (cp < 0x800 || Character.isSurrogate((char) cp)))
+                    || (extra == 3 && (cp < 0x10000 || cp > Character.MAX_CODE_POINT))) {
+                chars[n++] = '\uFFFD';
+                continue;
+            }
+            pos = p;
+            if (extra == 3) {
+                chars[n++] = Character.highSurrogate(cp);
+                chars[n++] = Character.lowSurrogate(cp);
+            } else {
+                chars[n++] = (char) cp;
             }
         }
-
-        // 模拟JavaScript的escape/decodeURIComponent流程
-        return ((String) decodeURIComponent(null, escape(null, encodedString)));
+        decoder.pos = end;
+        return new String(chars, 0, n);
     }
 
     /**
-     * 使用原生UTF-8解码器读取可变长度字符串
-     *
-     * @param decoder 解码器实例
-     * @return 解码后的字符串
+     * The signed byte at `index`, the caller checked the bounds.
      */
-    private static String _readVarStringNative(Decoder decoder) {
-        byte[] bytes = toByteArray(readVarUint8Array(decoder));
-        return new String(bytes, StandardCharsets.UTF_8);
+    private static int byteAt(byte[] arr, ByteBuffer buf, int index) {
+        return arr != null ? arr[index] : buf.get(index);
     }
 
     /**
      * 读取可变长度字符串
-     * 自动选择原生UTF-8解码器或备用实现
+     * byte[]使用JDK的UTF-8解码(有ASCII快速路径), ByteBuffer逐字节解码, 不需要额外的堆内拷贝
+     *
      * @param {Decoder} decoder
      * @return {String} The read String
      */
     public static String readVarString(Decoder decoder) {
-        try {
-            // 尝试使用原生UTF-8解码器
-            return _readVarStringNative(decoder);
-        } catch (Exception e) {
-            System.err.println(e.getMessage());
-            // 如果原生解码失败，回退到备用实现
+        if (decoder.arr == null) {
             return _readVarStringPolyfill(decoder);
         }
+        int len = readVarUint(decoder);
+        if (len > decoder.end - decoder.pos || len < 0) {
+            throw errorUnexpectedEndOfArray;
+        }
+        String str = new String(decoder.arr, decoder.pos, len, StandardCharsets.UTF_8);
+        decoder.pos += len;
+        return str;
     }
 
     /**
@@ -392,12 +554,20 @@ public class decoding {
      * @return {int[]} 解码后的字节数组
      */
     public static int[] readTerminatedUint8Array(Decoder decoder) {
+        return toIntArray(readTerminatedBytes(decoder));
+    }
+
+    /**
+     * @param decoder {Decoder} 解码器实例
+     * @return {byte[]} 解码后的字节数组
+     */
+    public static byte[] readTerminatedBytes(Decoder decoder) {
         Encoder encoder = encoding.createEncoder();
         int b;
         while (true) {
             b = readUint8(decoder);
             if (b == 0) {
-                return encoding.toUint8Array(encoder);
+                return encoding.toByteArray(encoder);
             }
             if (b == 1) {
                 b = readUint8(decoder);
@@ -412,7 +582,7 @@ public class decoding {
      * @return {String} 解码后的UTF-8字符串
      */
     public static String readTerminatedString(Decoder decoder) {
-        byte[] bytes = toByteArray(readTerminatedUint8Array(decoder));
+        byte[] bytes = readTerminatedBytes(decoder);
         return new String(bytes, StandardCharsets.UTF_8);
     }
 
@@ -436,18 +606,14 @@ public class decoding {
     }
 
     /**
-     * 从Decoder中读取指定长度的字节数组，并返回IntBuffer实例
+     * 从Decoder中读取指定长度的字节数组，并返回ByteBuffer视图(不复制)
      * 
      * @param decoder {Decoder} 解码器实例
      * @param len {int} 要读取的字节长度
-     * @return {IntBuffer} 包含读取数据的IntBuffer实例
+     * @return {ByteBuffer} 包含读取数据的ByteBuffer实例
      */
-    public static IntBuffer readFromDataView(Decoder decoder, int len) {
-        IntBuffer buffer = IntBuffer.wrap(decoder.arr, decoder.pos, len)
-                .slice();
-//                .order(ByteOrder.LITTLE_ENDIAN);
-        decoder.pos += len;
-        return buffer;
+    public static ByteBuffer readFromDataView(Decoder decoder, int len) {
+        return readUint8View(decoder, len).order(ByteOrder.LITTLE_ENDIAN);
     }
 
 
@@ -458,8 +624,7 @@ public class decoding {
      * @return {float} 解码后的32位浮点数
      */
     public static float readFloat32(Decoder decoder) {
-        int intValue = decoder.arr[decoder.pos++];
-        return Float.intBitsToFloat(intValue);
+        return Float.intBitsToFloat(readUint32(decoder));
     }
 
     /**
@@ -470,10 +635,7 @@ public class decoding {
      */
     // export const readFloat64 = decoder => readFromDataView(decoder, 8).getFloat64(0, false)
     public static double readFloat64(Decoder decoder) {
-        long longValue = ((long) decoder.arr[decoder.pos] << 32) |
-                (decoder.arr[decoder.pos + 1] & 0xFFFFFFFFL);
-        decoder.pos += 2;
-        return Double.longBitsToDouble(longValue);
+        return Double.longBitsToDouble(readBigInt64(decoder));
     }
 
     /**
@@ -484,10 +646,9 @@ public class decoding {
      */
     // export const readBigInt64 = decoder => /** @type {any} */ (readFromDataView(decoder, 8)).getBigInt64(0, false)
     public static long readBigInt64(Decoder decoder) {
-        long longValue = ((long) decoder.arr[decoder.pos] << 32) |
-                (decoder.arr[decoder.pos + 1] & 0xFFFFFFFFL);
-        decoder.pos += 2;
-        return longValue;
+        long low = readUint32(decoder) & 0xFFFFFFFFL;
+        long high = readUint32(decoder) & 0xFFFFFFFFL;
+        return (high << 32) | low;
     }
 
     /**
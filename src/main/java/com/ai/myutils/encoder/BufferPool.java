@@ -0,0 +1,98 @@
+package com.ai.myutils.encoder;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of reusable encoder chunks.
+ * Chunks are grouped in power-of-two size classes, each class keeps at most {@code maxPerClass} free chunks,
+ * classes above {@link #LARGE_CHUNK} at most {@link #MAX_LARGE_PER_CLASS}. The free chunks of a pool take at most
+ * {@code maxBytes} in total, chunks released beyond that are left to the GC.
+ * Instances are not thread-safe, use {@link #local()} to get a per-thread pool.
+ */
+public class BufferPool {
+    public static final int MIN_CHUNK = 128;
+    public static final int MAX_CHUNK = 1 << 20;
+    public static final int LARGE_CHUNK = 64 << 10;
+    public static final int MAX_LARGE_PER_CLASS = 2;
+    /**
+     * Bytes a thread's {@link #local()} pool keeps at most, so pooled threads (servers, executors) don't pin
+     * more than this for their lifetime.
+     */
+    public static final long LOCAL_MAX_BYTES = 1 << 20;
+
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_CHUNK) - Integer.numberOfTrailingZeros(MIN_CHUNK) + 1;
+
+    private static final ThreadLocal<BufferPool> LOCAL = ThreadLocal.withInitial(() -> new BufferPool(8, LOCAL_MAX_BYTES));
+
+    private final ArrayDeque<byte[]>[] free;
+    private final int maxPerClass;
+    private final long maxBytes;
+    private long retainedBytes;
+
+    public BufferPool(int maxPerClass) {
+        this(maxPerClass, Long.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BufferPool(int maxPerClass, long maxBytes) {
+        this.maxPerClass = maxPerClass;
+        this.maxBytes = maxBytes;
+        this.free = new ArrayDeque[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            this.free[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * The pool owned by the current thread, keeping at most {@link #LOCAL_MAX_BYTES}.
+     */
+    public static BufferPool local() {
+        return LOCAL.get();
+    }
+
+    private static int sizeClass(int len) {
+        if (len <= MIN_CHUNK) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(len - 1) - Integer.numberOfTrailingZeros(MIN_CHUNK);
+    }
+
+    /**
+     * Total size of the free chunks kept by this pool.
+     */
+    public long retainedBytes() {
+        return this.retainedBytes;
+    }
+
+    /**
+     * Get a chunk of at least {@code minLen} bytes. Its content is undefined.
+     */
+    public byte[] acquire(int minLen) {
+        if (minLen > MAX_CHUNK) {
+            return new byte[minLen];
+        }
+        int c = sizeClass(minLen);
+        byte[] chunk = this.free[c].pollLast();
+        if (chunk == null) {
+            return new byte[MIN_CHUNK << c];
+        }
+        this.retainedBytes -= chunk.length;
+        return chunk;
+    }
+
+    /**
+     * Return a chunk to the pool. Chunks that don't match a size class, or don't fit the limits, are dropped.
+     */
+    public void release(byte[] chunk) {
+        int len = chunk.length;
+        if (len < MIN_CHUNK || len > MAX_CHUNK || Integer.bitCount(len) != 1) {
+            return;
+        }
+        ArrayDeque<byte[]> q = this.free[sizeClass(len)];
+        int limit = len > LARGE_CHUNK ? Math.min(this.maxPerClass, MAX_LARGE_PER_CLASS) : this.maxPerClass;
+        if (q.size() < limit && this.retainedBytes + len <= this.maxBytes) {
+            q.addLast(chunk);
+            this.retainedBytes += len;
+        }
+    }
+}
@@ -3,17 +3,30 @@ package com.ai.myutils.encoder;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * A BinaryEncoder handles the encoding to an byte[].
+ * Every chunk in {@code bufs} is completely filled, {@code cbuf} is filled up to {@code cpos}.
+ */
 public class Encoder {
     protected int cpos;
-    protected int[] cbuf;
-    protected List<int[]> bufs;
+    protected byte[] cbuf;
+    protected List<byte[]> bufs;
+    /**
+     * Where chunks are taken from and returned to, null if chunks are plain allocations.
+     */
+    protected final BufferPool pool;
 
     public Encoder() {
         this.cpos = 0;
-        this.cbuf = new int[100];
+        this.cbuf = new byte[100];
         this.bufs = new ArrayList<>();
+        this.pool = null;
     }
-}
-
-
 
+    public Encoder(BufferPool pool) {
+        this.cpos = 0;
+        this.cbuf = pool.acquire(BufferPool.MIN_CHUNK);
+        this.bufs = new ArrayList<>();
+        this.pool = pool;
+    }
+}
@@ -35,6 +35,11 @@ public class IntDiffOptRleEncoder {
         }
     }
 
+    public byte[] toByteArray() {
+        flush();
+        return encoding.toByteArray(encoder);
+    }
+
     public int[] toUint8Array() {
         flush();
         return encoding.toUint8Array(encoder);
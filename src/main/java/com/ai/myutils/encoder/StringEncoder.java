@@ -1,5 +1,7 @@
 package com.ai.myutils.encoder;
 
+import com.ai.myutils.Uint8Array;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,12 +25,16 @@ public class StringEncoder {
         lengthEncoder.write(str.length());
     }
 
-    public int[] toUint8Array() {
+    public byte[] toByteArray() {
         Encoder encoder = new Encoder();
         strings.add(buffer.toString());
         buffer.setLength(0);
         encoding.writeVarString(encoder, String.join("", strings));
-        encoding.writeUint8Array(encoder, lengthEncoder.toUint8Array());
-        return encoding.toUint8Array(encoder);
+        encoding.writeUint8Array(encoder, lengthEncoder.toByteArray());
+        return encoding.toByteArray(encoder);
+    }
+
+    public int[] toUint8Array() {
+        return Uint8Array.toIntArray(toByteArray());
     }
 }
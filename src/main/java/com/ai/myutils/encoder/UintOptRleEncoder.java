@@ -30,6 +30,11 @@ public class UintOptRleEncoder {
         }
     }
 
+    public byte[] toByteArray() {
+        flush();
+        return encoding.toByteArray(encoder);
+    }
+
     public int[] toUint8Array() {
         flush();
         return encoding.toUint8Array(encoder);
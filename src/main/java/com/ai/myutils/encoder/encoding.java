@@ -3,16 +3,57 @@ package com.ai.myutils.encoder;
 import com.ai.myutils.Uint8Array;
 import com.ai.myutils.binary;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 public class encoding<T> {
+    private static final byte[] EMPTY = new byte[0];
+
     public static Encoder createEncoder() {
         return new Encoder();
     }
 
+    /**
+     * Create an encoder whose chunks are taken from {@code pool}. Call {@link #release(Encoder)} when done.
+     */
+    public static Encoder createEncoder(BufferPool pool) {
+        return new Encoder(pool);
+    }
+
+    /**
+     * Reset the encoder so it can be reused, returning its chunks to its pool.
+     * Arrays previously obtained through {@link #toByteArray(Encoder)} are not affected.
+     */
+    public static void release(Encoder encoder) {
+        if (encoder.pool != null) {
+            for (byte[] buf : encoder.bufs) {
+                encoder.pool.release(buf);
+            }
+            // the next write takes a fresh chunk from the pool
+            encoder.pool.release(encoder.cbuf);
+            encoder.cbuf = EMPTY;
+        }
+        encoder.bufs.clear();
+        encoder.cpos = 0;
+    }
+
+    /**
+     * Allocate the next chunk, twice as large as the current one and at least {@code minLen} bytes.
+     */
+    private static byte[] nextChunk(Encoder encoder, int minLen) {
+        int len = Math.max(encoder.cbuf.length * 2, minLen);
+        if (encoder.pool == null) {
+            return new byte[len];
+        }
+        return encoder.pool.acquire(Math.max(Math.min(len, BufferPool.MAX_CHUNK), minLen));
+    }
+
 //    public static byte[] encode(EncoderFunction f) {
 //        Encoder encoder = createEncoder();
 //        f.apply(encoder);
@@ -21,7 +62,7 @@ public class encoding<T> {
 
     public static int length(Encoder encoder) {
         int len = encoder.cpos;
-        for (int[] buf : encoder.bufs) {
+        for (byte[] buf : encoder.bufs) {
             len += buf.length;
         }
         return len;
@@ -31,10 +72,13 @@ public class encoding<T> {
         return encoder.cpos > 0 || !encoder.bufs.isEmpty();
     }
 
-    public static int[] toUint8Array(Encoder encoder) {
-        int[] uint8arr = new int[length(encoder)];
+    /**
+     * Transform to byte[].
+     */
+    public static byte[] toByteArray(Encoder encoder) {
+        byte[] uint8arr = new byte[length(encoder)];
         int curPos = 0;
-        for (int[] d : encoder.bufs) {
+        for (byte[] d : encoder.bufs) {
             System.arraycopy(d, 0, uint8arr, curPos, d.length);
             curPos += d.length;
         }
@@ -42,26 +86,67 @@ public class encoding<T> {
         return uint8arr;
     }
 
+    /**
+     * Write the encoded content to {@code out} chunk by chunk, without concatenating it first.
+     */
+    public static void writeTo(Encoder encoder, OutputStream out) throws IOException {
+        for (byte[] d : encoder.bufs) {
+            out.write(d, 0, d.length);
+        }
+        out.write(encoder.cbuf, 0, encoder.cpos);
+    }
+
+    /**
+     * Write the encoded content to {@code channel} chunk by chunk, without concatenating it first.
+     */
+    public static void writeTo(Encoder encoder, WritableByteChannel channel) throws IOException {
+        for (byte[] d : encoder.bufs) {
+            writeFully(channel, ByteBuffer.wrap(d));
+        }
+        writeFully(channel, ByteBuffer.wrap(encoder.cbuf, 0, encoder.cpos));
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            channel.write(src);
+        }
+    }
+
+    /**
+     * Transform to an int[] "Uint8Array" (one unsigned byte per element).
+     * Adapter for the int[] API, prefer {@link #toByteArray(Encoder)}.
+     */
+    public static int[] toUint8Array(Encoder encoder) {
+        return Uint8Array.toIntArray(toByteArray(encoder));
+    }
+
     public static void verifyLen(Encoder encoder, int len) {
         if (encoder.cbuf.length - encoder.cpos < len) {
-            encoder.bufs.add(Arrays.copyOf(encoder.cbuf, encoder.cpos));
-            encoder.cbuf = new int[Math.max(encoder.cbuf.length, len) * 2];
+            if (encoder.cpos > 0) {
+                encoder.bufs.add(Arrays.copyOf(encoder.cbuf, encoder.cpos));
+            }
+            if (encoder.pool != null) {
+                encoder.pool.release(encoder.cbuf);
+            }
+            encoder.cbuf = nextChunk(encoder, len * 2);
             encoder.cpos = 0;
         }
     }
 
     public static <T> void write(Encoder encoder, int num) {
         if (encoder.cpos == encoder.cbuf.length) {
-            encoder.bufs.add(encoder.cbuf);
-            encoder.cbuf = new int[encoder.cbuf.length * 2];
+            if (encoder.cpos > 0) {
+                encoder.bufs.add(encoder.cbuf);
+            }
+            encoder.cbuf = nextChunk(encoder, 0);
             encoder.cpos = 0;
         }
-        encoder.cbuf[encoder.cpos++] = num;
+        encoder.cbuf[encoder.cpos++] = (byte) num;
     }
 
     public static void set(Encoder encoder, int pos, int num) {
-        int[] buffer = null;
-        for (int[] buf : encoder.bufs) {
+        byte[] buffer = null;
+        for (byte[] buf : encoder.bufs) {
             if (pos < buf.length) {
                 buffer = buf;
                 break;
@@ -71,7 +156,7 @@ public class encoding<T> {
         if (buffer == null) {
             buffer = encoder.cbuf;
         }
-        buffer[pos] = num;
+        buffer[pos] = (byte) num;
     }
 
     public static void writeUint8(Encoder encoder, int num) {
@@ -112,41 +197,113 @@ public class encoding<T> {
         }
     }
 
+    /**
+     * Write a variable length unsigned integer, negative numbers are written as unsigned 32 bit.
+     * Writes directly into the current chunk if there is room for the longest (5 byte) encoding.
+     */
     public static void writeVarUint(Encoder encoder, int num) {
-        while (num > binary.BITS7) {
-            write(encoder, binary.BIT8 | (binary.BITS7 & num));
-            num = num / 128;
+        byte[] cbuf = encoder.cbuf;
+        int cpos = encoder.cpos;
+        if (cbuf.length - cpos >= 5) {
+            while ((num & ~binary.BITS7) != 0) {
+                cbuf[cpos++] = (byte) (binary.BIT8 | (num & binary.BITS7));
+                num >>>= 7;
+            }
+            cbuf[cpos++] = (byte) num;
+            encoder.cpos = cpos;
+            return;
+        }
+        while ((num & ~binary.BITS7) != 0) {
+            write(encoder, binary.BIT8 | (num & binary.BITS7));
+            num >>>= 7;
         }
-        write(encoder, binary.BITS7 & num);
+        write(encoder, num);
     }
 
+    /**
+     * Write a variable length integer: the sign goes into the first byte, the absolute value follows.
+     * {@code isNegative} with {@code num == 0} writes -0, which the rle encoders use as a marker.
+     */
     public static void writeVarInt(Encoder encoder, long num, boolean isNegative) {
-        if (isNegative) {
+        if (num < 0) {
+            isNegative = true;
             num = -num;
         }
         //                   |- whether to continue reading          |- whether is negative           |- number
         write(encoder, (int) ((num > binary.BITS6 ? binary.BIT8 : 0) | (isNegative ? binary.BIT7 : 0) | (binary.BITS6 & num)));
-        num = num / 64;
+        num >>>= 6;
         // We don't need to consider the case of num === 0, so we can use a different
         // pattern here than above.
         while (num > 0) {
             write(encoder, (int) ((num > binary.BITS7 ? binary.BIT8 : 0) | (binary.BITS7 & num)));
-            num = num / 128;
+            num >>>= 7;
         }
     }
 
+    /**
+     * Write a variable length string as UTF-8.
+     * Short strings are encoded directly into the current chunk behind a one byte length,
+     * longer ones through {@link String#getBytes}. Unpaired surrogates are written as '?', like {@link String#getBytes}.
+     */
     public static void writeVarString(Encoder encoder, String str) {
-        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
-        writeVarUint(encoder, bytes.length);
-        writeUint8Array(encoder, Uint8Array.toIntArray(bytes));
+        // a UTF-16 char takes at most 3 bytes in UTF-8
+        int maxLen = str.length() * 3;
+        int cpos = encoder.cpos;
+        if (maxLen <= binary.BITS7 && encoder.cbuf.length - cpos > maxLen) {
+            int end = utf8Encode(str, encoder.cbuf, cpos + 1);
+            encoder.cbuf[cpos] = (byte) (end - cpos - 1);
+            encoder.cpos = end;
+        } else {
+            byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+            writeVarUint(encoder, bytes.length);
+            writeUint8Array(encoder, bytes);
+        }
+    }
+
+    /**
+     * Encode {@code str} as UTF-8 into {@code buf} at {@code pos}, the caller ensures there is room.
+     *
+     * @return the position after the last written byte
+     */
+    static int utf8Encode(String str, byte[] buf, int pos) {
+        int n = str.length();
+        int i = 0;
+        // ascii prefix
+        for (char c; i < n && (c = str.charAt(i)) < 0x80; i++) {
+            buf[pos++] = (byte) c;
+        }
+        for (; i < n; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                buf[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xc0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(str.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, str.charAt(++i));
+                    buf[pos++] = (byte) (0xf0 | (cp >> 18));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buf[pos++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    buf[pos++] = '?';
+                }
+            } else {
+                buf[pos++] = (byte) (0xe0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return pos;
     }
 
     public static void writeTerminatedString(Encoder encoder, String str) {
-        writeTerminatedUint8Array(encoder, Uint8Array.toIntArray(str.getBytes(StandardCharsets.UTF_8)));
+        writeTerminatedUint8Array(encoder, str.getBytes(StandardCharsets.UTF_8));
     }
 
-    public static void writeTerminatedUint8Array(Encoder encoder, int[] buf) {
-        for (int b : buf) {
+    public static void writeTerminatedUint8Array(Encoder encoder, byte[] buf) {
+        for (byte b : buf) {
             if (b == 0 || b == 1) {
                 write(encoder, 1);
             }
@@ -155,23 +312,45 @@ public class encoding<T> {
         write(encoder, 0);
     }
 
+    public static void writeTerminatedUint8Array(Encoder encoder, int[] buf) {
+        writeTerminatedUint8Array(encoder, Uint8Array.toByteArray(buf));
+    }
+
     public static void writeBinaryEncoder(Encoder encoder, Encoder append) {
-        writeUint8Array(encoder, toUint8Array(append));
+        for (byte[] buf : append.bufs) {
+            writeUint8Array(encoder, buf, 0, buf.length);
+        }
+        writeUint8Array(encoder, append.cbuf, 0, append.cpos);
     }
 
-    public static void writeUint8Array(Encoder encoder, int[] uint8Array) {
-        int leftCopyLen = Math.min(encoder.cbuf.length - encoder.cpos, uint8Array.length);
-        int rightCopyLen = uint8Array.length - leftCopyLen;
-        System.arraycopy(uint8Array, 0, encoder.cbuf, encoder.cpos, leftCopyLen);
+    public static void writeUint8Array(Encoder encoder, byte[] uint8Array) {
+        writeUint8Array(encoder, uint8Array, 0, uint8Array.length);
+    }
+
+    public static void writeUint8Array(Encoder encoder, byte[] uint8Array, int offset, int length) {
+        int leftCopyLen = Math.min(encoder.cbuf.length - encoder.cpos, length);
+        int rightCopyLen = length - leftCopyLen;
+        System.arraycopy(uint8Array, offset, encoder.cbuf, encoder.cpos, leftCopyLen);
         encoder.cpos += leftCopyLen;
         if (rightCopyLen > 0) {
-            encoder.bufs.add(encoder.cbuf);
-            encoder.cbuf = new int[Math.max(encoder.cbuf.length * 2, rightCopyLen)];
-            System.arraycopy(uint8Array, leftCopyLen, encoder.cbuf, 0, rightCopyLen);
+            if (encoder.cpos > 0) {
+                encoder.bufs.add(encoder.cbuf);
+            }
+            encoder.cbuf = nextChunk(encoder, rightCopyLen);
+            System.arraycopy(uint8Array, offset + leftCopyLen, encoder.cbuf, 0, rightCopyLen);
             encoder.cpos = rightCopyLen;
         }
     }
 
+    public static void writeUint8Array(Encoder encoder, int[] uint8Array) {
+        writeUint8Array(encoder, Uint8Array.toByteArray(uint8Array));
+    }
+
+    public static void writeVarUint8Array(Encoder encoder, byte[] uint8Array) {
+        writeVarUint(encoder, uint8Array.length);
+        writeUint8Array(encoder, uint8Array);
+    }
+
     public static void writeVarUint8Array(Encoder encoder, int[] uint8Array) {
         writeVarUint(encoder, uint8Array.length);
         writeUint8Array(encoder, uint8Array);
@@ -205,17 +384,17 @@ public class encoding<T> {
             write(encoder, 119);
             writeVarString(encoder, (String) data);
         } else if (data instanceof Number) {
-            if (data instanceof Integer) {
+            Number num = (Number) data;
+            if ((data instanceof Integer || data instanceof Long || data instanceof Short || data instanceof Byte)
+                    && Math.abs(num.longValue()) <= binary.BITS31) {
                 write(encoder, 125);
-                writeVarInt(encoder, ((Integer) data).longValue(), false);
-            } else if (data instanceof Float || data instanceof Double) {
-                if (isFloat32(((Number) data).floatValue())) {
-                    write(encoder, 124);
-                    writeFloat32(encoder, ((Number) data).floatValue());
-                } else {
-                    write(encoder, 123);
-                    writeFloat64(encoder, ((Number) data).doubleValue());
-                }
+                writeVarInt(encoder, num.longValue(), num.longValue() < 0);
+            } else if (isFloat32(num.doubleValue())) {
+                write(encoder, 124);
+                writeFloat32(encoder, num.floatValue());
+            } else {
+                write(encoder, 123);
+                writeFloat64(encoder, num.doubleValue());
             }
         } else if (data instanceof Boolean) {
             write(encoder, (Boolean) data ? 120 : 121);
@@ -229,6 +408,9 @@ public class encoding<T> {
         } else if (data instanceof int[]) {
             write(encoder, 116);
             writeVarUint8Array(encoder, (int[]) data);
+        } else if (data instanceof byte[]) {
+            write(encoder, 116);
+            writeVarUint8Array(encoder, (byte[]) data);
         } else if (data instanceof Map) {
             write(encoder, 118);
             Map<?, ?> map = (Map<?, ?>) data;
@@ -242,7 +424,7 @@ public class encoding<T> {
         }
     }
 
-    private static boolean isFloat32(float num) {
-        return Float.floatToIntBits(num) == Float.floatToIntBits(Float.intBitsToFloat(Float.floatToIntBits(num)));
+    private static boolean isFloat32(double num) {
+        return (float) num == num;
     }
 }
\ No newline at end of file
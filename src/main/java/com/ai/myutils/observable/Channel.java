@@ -0,0 +1,85 @@
+package com.ai.myutils.observable;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * 一个事件的监听器, L为监听器类型(Consumer/BinaryConsumer/TriConsumer/QuadConsumer).
+ * 写时复制: on/off替换整个数组, emit遍历当时的数组, 不分配对象.
+ * 同一个监听器只注册一次, 按注册顺序调用.
+ */
+public final class Channel<L extends Consumer> {
+    private static final Consumer[] NONE = new Consumer[0];
+
+    private volatile Consumer[] listeners = NONE;
+
+    /**
+     * 没有监听器时可以跳过事件参数的计算
+     */
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    public synchronized void on(L listener) {
+        Consumer[] current = listeners;
+        for (Consumer l : current) {
+            if (l.equals(listener)) {
+                return;
+            }
+        }
+        Consumer[] added = Arrays.copyOf(current, current.length + 1);
+        added[current.length] = listener;
+        listeners = added;
+    }
+
+    public synchronized void off(Consumer listener) {
+        Consumer[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].equals(listener)) {
+                if (current.length == 1) {
+                    listeners = NONE;
+                } else {
+                    Consumer[] removed = new Consumer[current.length - 1];
+                    System.arraycopy(current, 0, removed, 0, i);
+                    System.arraycopy(current, i + 1, removed, i, current.length - i - 1);
+                    listeners = removed;
+                }
+                return;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        listeners = NONE;
+    }
+
+    // 以下emit的参数个数需与监听器类型对应
+
+    @SuppressWarnings("unchecked")
+    public void emit(Object arg) {
+        for (Consumer listener : listeners) {
+            listener.accept(arg);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void emit(Object arg, Object arg2) {
+        for (Consumer listener : listeners) {
+            ((BinaryConsumer) listener).accept(arg, arg2);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void emit(Object arg, Object arg2, Object arg3) {
+        for (Consumer listener : listeners) {
+            ((TriConsumer) listener).accept(arg, arg2, arg3);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void emit(Object arg, Object arg2, Object arg3, Object arg4) {
+        for (Consumer listener : listeners) {
+            ((QuadConsumer) listener).accept(arg, arg2, arg3, arg4);
+        }
+    }
+}
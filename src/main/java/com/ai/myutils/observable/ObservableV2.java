@@ -1,14 +1,27 @@
 package com.ai.myutils.observable;
 
-import java.util.*;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
 
 
+/**
+ * 事件名 -> {@link Channel}, 监听器数组写时复制, emit不分配对象, 并且可以在其他线程注册/注销监听器的同时调用.
+ * Channel创建后不会被移除, 子类可以用{@link #channel(String)}预先取得常用事件的Channel, emit时不必再查表.
+ */
 public class ObservableV2 {
-    public Map<String, Set<Consumer>> _observers;
+    public final Map<String, Channel<Consumer>> _observers;
 
     public ObservableV2() {
-        this._observers = new HashMap<>();
+        this._observers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * 事件name的Channel, 不存在时创建
+     */
+    @SuppressWarnings("unchecked")
+    public <L extends Consumer> Channel<L> channel(String name) {
+        return (Channel<L>) (Channel) _observers.computeIfAbsent(name, k -> new Channel<>());
     }
 
     public <T> void once(String name, Consumer<T> f) {
@@ -30,61 +43,58 @@ public class ObservableV2 {
     }
 
     public <T> void on(String name, Consumer<T> listener) {
-        _observers.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(listener);
+        channel(name).on(listener);
     }
 
     public <T, U> void on(String name, BinaryConsumer<T, U> listener) {
-        _observers.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(listener);
+        channel(name).on(listener);
     }
 
     public <T, U, V> void on(String name, TriConsumer<T, U, V> listener) {
-        _observers.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(listener);
+        channel(name).on(listener);
     }
 
     public <T, U, V, W> void on(String name, QuadConsumer<T, U, V, W> listener) {
-        _observers.computeIfAbsent(name, k -> new LinkedHashSet<>()).add(listener);
+        channel(name).on(listener);
     }
 
     public <T> void emit(String name, T arg) {
-        Set<Consumer> eventObservers = _observers.getOrDefault(name, new LinkedHashSet<>());
-        for (Consumer listener : new LinkedHashSet<>(eventObservers)) {
-            ((Consumer<T>) listener).accept(arg);
+        Channel<Consumer> listeners = _observers.get(name);
+        if (listeners != null) {
+            listeners.emit(arg);
         }
     }
 
     public <T, U> void emit(String name, T arg, U arg2) {
-        Set<Consumer> eventObservers = _observers.getOrDefault(name, new LinkedHashSet<>());
-        for (Consumer listener : new LinkedHashSet<>(eventObservers)) {
-            ((BinaryConsumer<T, U>) listener).accept(arg, arg2);
+        Channel<Consumer> listeners = _observers.get(name);
+        if (listeners != null) {
+            listeners.emit(arg, arg2);
         }
     }
 
     public <T, U, V> void emit(String name, T arg, U arg2, V arg3) {
-        Set<Consumer> eventObservers = _observers.getOrDefault(name, new LinkedHashSet<>());
-        for (Consumer listener : new LinkedHashSet<>(eventObservers)) {
-            ((TriConsumer<T, U, V>) listener).accept(arg, arg2, arg3);
+        Channel<Consumer> listeners = _observers.get(name);
+        if (listeners != null) {
+            listeners.emit(arg, arg2, arg3);
         }
     }
 
     public <T, U, V, W> void emit(String name, T arg, U arg2, V arg3, W arg4) {
-        Set<Consumer> eventObservers = _observers.getOrDefault(name, new LinkedHashSet<>());
-        for (Consumer listener : new LinkedHashSet<>(eventObservers)) {
-            ((QuadConsumer<T, U, V, W>) listener).accept(arg, arg2, arg3, arg4);
+        Channel<Consumer> listeners = _observers.get(name);
+        if (listeners != null) {
+            listeners.emit(arg, arg2, arg3, arg4);
         }
     }
 
     public void off(String name, Consumer listener) {
-        Set<Consumer> eventObservers = _observers.get(name);
-        if (eventObservers != null) {
-            eventObservers.remove(listener);
-            if (eventObservers.isEmpty()) {
-                _observers.remove(name);
-            }
+        Channel<Consumer> listeners = _observers.get(name);
+        if (listeners != null) {
+            listeners.off(listener);
         }
     }
 
     public void destroy() {
-        this._observers.clear();
-        this._observers = new HashMap<>();
+        // Channel可能已被子类预先取得, 只清空不移除
+        this._observers.values().forEach(Channel::clear);
     }
 }
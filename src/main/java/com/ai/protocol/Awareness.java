@@ -9,7 +9,6 @@ import com.ai.protocol.vo.ChangeEvent;
 import com.ai.protocol.vo.MetaClientState;
 import com.ai.protocol.vo.UpdateEvent;
 import com.ai.utils.Doc;
-import com.alibaba.fastjson.JSON;
 import lombok.Getter;
 
 import java.util.*;
@@ -23,39 +22,53 @@ import static java.util.Collections.*;
  */
 public class Awareness extends ObservableV2 {
     public static final long outdatedTimeout = 30000;
+    // 增量更新中每个客户端条目的类型
+    private static final int FULL_STATE = 0;
+    private static final int DELTA_STATE = 1;
     private final Doc doc;
     private final int clientID;
     @Getter
     private final Map<Integer, Map<String, Object>> states = new ConcurrentHashMap<>();
     public final Map<Integer, MetaClientState> meta = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private ScheduledFuture<?> checkTask;
+    /**
+     * 各客户端状态的已编码形式, 状态不变时重复广播不必再序列化
+     */
+    private final Map<Integer, byte[]> encodedStates = new ConcurrentHashMap<>();
+    /**
+     * 各客户端最近一次状态变化, 用于编码增量更新
+     */
+    private final Map<Integer, StateDelta> deltas = new ConcurrentHashMap<>();
+    @Getter
+    private AwarenessStateCodec stateCodec;
+    /**
+     * 远程客户端按最后更新时间排序, 超时检查只看队首. 同一客户端可能有多个条目, 只有最新的一个有效
+     */
+    private final PriorityQueue<Expiry> expiries = new PriorityQueue<>();
+    private final ScheduledFuture<?> checkTask;
 
     public Awareness(Doc doc) {
+        this(doc, AwarenessStateCodec.JSON);
+    }
+
+    public Awareness(Doc doc, AwarenessStateCodec stateCodec) {
+        this(doc, stateCodec, null);
+    }
+
+    /**
+     * @param scheduler 定期检查超时的调度器, 为null时使用所有Awareness共用的调度线程. 销毁时不会关闭它
+     */
+    public Awareness(Doc doc, AwarenessStateCodec stateCodec, ScheduledExecutorService scheduler) {
         this.doc = doc;
+        this.stateCodec = stateCodec;
         this.clientID = doc.clientID;
 
         // 设置定期检查超时的任务
-        this.checkTask = scheduler.scheduleAtFixedRate(() -> {
-            long now = System.currentTimeMillis() / 1000;
-            // 更新本地状态时钟
-            if (getLocalState() != null &&
-                    (outdatedTimeout / 2 <= now - meta.get(clientID).lastUpdated)) {
-                setLocalState(getLocalState());
-            }
-
-            // 检查超时的远程客户端
-            List<Integer> remove = new ArrayList<>();
-            meta.forEach((clientId, metaState) -> {
-                if (clientId != clientID &&
-                        outdatedTimeout <= now - metaState.lastUpdated &&
-                        states.containsKey(clientId)) {
-                    remove.add(clientId);
-                }
-            });
-
-            if (!remove.isEmpty()) {
-                removeAwarenessStates(this, remove, "timeout");
+        this.checkTask = (scheduler == null ? SharedScheduler.INSTANCE : scheduler).scheduleAtFixedRate(() -> {
+            try {
+                checkOutdated(System.currentTimeMillis());
+            } catch (Exception error) {
+                // 异常会取消周期任务, 只记录
+                System.err.println("检查awareness超时出错: " + error);
             }
         }, outdatedTimeout / 10, outdatedTimeout / 10, TimeUnit.MILLISECONDS);
 
@@ -67,8 +80,48 @@ public class Awareness extends ObservableV2 {
         emit("destroy", this);
         setLocalState(null);
         super.destroy();
-        checkTask.cancel(true);
-        scheduler.shutdown();
+        checkTask.cancel(false);
+    }
+
+    /**
+     * 续期本地状态, 移除超时的远程客户端. 由调度器定期调用, 使用自定义定时器时也可以直接调用
+     *
+     * @param now 当前时间, 毫秒
+     */
+    public void checkOutdated(long now) {
+        // 更新本地状态时钟
+        MetaClientState localMeta = meta.get(clientID);
+        if (getLocalState() != null && localMeta != null &&
+                outdatedTimeout / 2 <= now - localMeta.lastUpdated * 1000) {
+            setLocalState(getLocalState());
+        }
+
+        // 检查超时的远程客户端
+        List<Integer> remove = new ArrayList<>();
+        synchronized (expiries) {
+            Expiry head;
+            while ((head = expiries.peek()) != null && outdatedTimeout <= now - head.lastUpdated * 1000) {
+                expiries.poll();
+                MetaClientState metaState = meta.get(head.clientID);
+                // 之后又收到过更新的条目已经失效
+                if (metaState != null && metaState.lastUpdated <= head.lastUpdated &&
+                        states.containsKey(head.clientID)) {
+                    remove.add(head.clientID);
+                }
+            }
+        }
+
+        if (!remove.isEmpty()) {
+            removeAwarenessStates(this, remove, "timeout");
+        }
+    }
+
+    /**
+     * 切换状态编码, 已缓存的编码随之失效
+     */
+    public void setStateCodec(AwarenessStateCodec stateCodec) {
+        this.stateCodec = stateCodec;
+        encodedStates.clear();
     }
 
     public Map<String, Object> getLocalState() {
@@ -85,6 +138,13 @@ public class Awareness extends ObservableV2 {
         } else {
             states.put(clientID, state);
         }
+        encodedStates.remove(clientID);
+        StateDelta delta = (prevState == null || state == null) ? null : StateDelta.diff(clock, prevState, state);
+        if (delta == null) {
+            deltas.remove(clientID);
+        } else {
+            deltas.put(clientID, delta);
+        }
 
         meta.put(clientID, new MetaClientState(clock, System.currentTimeMillis() / 1000));
 
@@ -99,7 +159,7 @@ public class Awareness extends ObservableV2 {
             added.add(clientID);
         } else {
             updated.add(clientID);
-            if (!deepEquals(prevState, state)) {
+            if (!delta.isEmpty()) {
                 filteredUpdated.add(clientID);
             }
         }
@@ -119,6 +179,11 @@ public class Awareness extends ObservableV2 {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> decodeState(byte[] encoded) {
+        return (Map<String, Object>) stateCodec.decode(encoded);
+    }
+
     private boolean deepEquals(Map<String, Object> a, Map<String, Object> b) {
         // 实现深度比较逻辑
         return Objects.deepEquals(a, b);
@@ -133,6 +198,8 @@ public class Awareness extends ObservableV2 {
         for (int clientID : clients) {
             if (awareness.states.containsKey(clientID)) {
                 awareness.states.remove(clientID);
+                awareness.encodedStates.remove(clientID);
+                awareness.deltas.remove(clientID);
                 if (clientID == awareness.clientID) {
                     MetaClientState curMeta = awareness.meta.get(clientID);
                     awareness.meta.put(clientID, new MetaClientState(curMeta.clock + 1, System.currentTimeMillis() / 1000));
@@ -158,23 +225,46 @@ public class Awareness extends ObservableV2 {
                                                Map<Integer, Map<String, Object>> states) {
         Encoder encoder = encoding.createEncoder();
         encoding.writeVarUint(encoder, clients.size());
+        // 只有awareness自己的状态才能使用缓存的编码
+        boolean cached = states == awareness.states;
 
         for (int clientID : clients) {
-            Map<String, Object> state = states.getOrDefault(clientID, null);
             int clock = awareness.meta.get(clientID).clock;
 
             encoding.writeVarUint(encoder, clientID);
             encoding.writeVarUint(encoder, clock);
-            encoding.writeVarString(encoder, JSON.toJSONString(state));
+            encoding.writeVarUint8Array(encoder, cached
+                    ? awareness.encodedState(clientID)
+                    : awareness.stateCodec.encode(states.get(clientID)));
         }
 
         return encoding.toUint8Array(encoder);
     }
 
+    /**
+     * 取客户端状态的编码, 没有缓存时编码并缓存
+     */
+    private byte[] encodedState(int clientID) {
+        byte[] encoded = encodedStates.get(clientID);
+        if (encoded == null) {
+            Map<String, Object> state = states.get(clientID);
+            encoded = stateCodec.encode(state);
+            if (state != null) {
+                encodedStates.put(clientID, encoded);
+            }
+        }
+        return encoded;
+    }
+
     /**
      * 修改awareness更新内容
      */
     public static int[] modifyAwarenessUpdate(int[] update, Function<Object, Object> modify) {
+        return modifyAwarenessUpdate(update, modify, AwarenessStateCodec.JSON);
+    }
+
+    public static int[] modifyAwarenessUpdate(int[] update, Function<Object, Object> modify,
+                                              AwarenessStateCodec codec) {
         Decoder decoder = decoding.createDecoder(update);
         Encoder encoder = encoding.createEncoder();
 
@@ -184,13 +274,13 @@ public class Awareness extends ObservableV2 {
         for (int i = 0; i < len; i++) {
             int clientID = decoding.readVarUint(decoder);
             int clock = decoding.readVarUint(decoder);
-            Object state = JSON.parse(decoding.readVarString(decoder));
+            Object state = codec.decode(decoding.readVarBytes(decoder));
 
             Object modifiedState = modify.apply(state);
 
             encoding.writeVarUint(encoder, clientID);
             encoding.writeVarUint(encoder, clock);
-            encoding.writeVarString(encoder, JSON.toJSONString(modifiedState));
+            encoding.writeVarUint8Array(encoder, codec.encode(modifiedState));
         }
 
         return encoding.toUint8Array(encoder);
@@ -202,54 +292,260 @@ public class Awareness extends ObservableV2 {
     public static void applyAwarenessUpdate(Awareness awareness, int[] update, String origin) {
         Decoder decoder = decoding.createDecoder(update);
         long timestamp = System.currentTimeMillis() / 1000;
+        Changes changes = new Changes();
 
-        List<Integer> added = new ArrayList<>();
-        List<Integer> updated = new ArrayList<>();
-        List<Integer> filteredUpdated = new ArrayList<>();
-        List<Integer> removed = new ArrayList<>();
+        int len = decoding.readVarUint(decoder);
+        for (int i = 0; i < len; i++) {
+            int clientID = decoding.readVarUint(decoder);
+            int clock = decoding.readVarUint(decoder);
+            awareness.applyFullState(clientID, clock, decoding.readVarBytes(decoder), timestamp, changes);
+        }
+
+        changes.emit(awareness, origin);
+    }
+
+    /**
+     * 编码增量awareness更新: 对上一个时钟的状态只写入变化的字段, 没有可用的增量时写入完整状态.
+     * 格式与{@link #encodeAwarenessUpdate}不同, 需用{@link #applyAwarenessDeltaUpdate}应用
+     */
+    public static int[] encodeAwarenessDeltaUpdate(Awareness awareness, List<Integer> clients) {
+        Encoder encoder = encoding.createEncoder();
+        encoding.writeVarUint(encoder, clients.size());
+
+        for (int clientID : clients) {
+            int clock = awareness.meta.get(clientID).clock;
+            StateDelta delta = awareness.deltas.get(clientID);
+
+            encoding.writeVarUint(encoder, clientID);
+            encoding.writeVarUint(encoder, clock);
+            if (delta != null && delta.clock == clock && awareness.states.containsKey(clientID)) {
+                encoding.writeVarUint(encoder, DELTA_STATE);
+                encoding.writeVarUint(encoder, delta.changed.size());
+                delta.changed.forEach((key, value) -> {
+                    encoding.writeVarString(encoder, key);
+                    encoding.writeVarUint8Array(encoder, awareness.stateCodec.encode(value));
+                });
+                encoding.writeVarUint(encoder, delta.removed.size());
+                for (String key : delta.removed) {
+                    encoding.writeVarString(encoder, key);
+                }
+            } else {
+                encoding.writeVarUint(encoder, FULL_STATE);
+                encoding.writeVarUint8Array(encoder, awareness.encodedState(clientID));
+            }
+        }
+
+        return encoding.toUint8Array(encoder);
+    }
+
+    /**
+     * 应用增量awareness更新. 增量只能应用在上一个时钟的状态上, 中间缺了更新的客户端不会被修改
+     *
+     * @return 需要重新获取完整状态(见{@link #encodeAwarenessUpdate})的客户端
+     */
+    public static List<Integer> applyAwarenessDeltaUpdate(Awareness awareness, int[] update, String origin) {
+        Decoder decoder = decoding.createDecoder(update);
+        long timestamp = System.currentTimeMillis() / 1000;
+        Changes changes = new Changes();
+        List<Integer> missing = new ArrayList<>();
 
         int len = decoding.readVarUint(decoder);
         for (int i = 0; i < len; i++) {
             int clientID = decoding.readVarUint(decoder);
             int clock = decoding.readVarUint(decoder);
-            Map<String, Object> state = JSON.parseObject(decoding.readVarString(decoder));
+            if (decoding.readVarUint(decoder) == FULL_STATE) {
+                awareness.applyFullState(clientID, clock, decoding.readVarBytes(decoder), timestamp, changes);
+                continue;
+            }
+            Map<String, Object> changed = new HashMap<>();
+            int changedLen = decoding.readVarUint(decoder);
+            for (int j = 0; j < changedLen; j++) {
+                String key = decoding.readVarString(decoder);
+                changed.put(key, awareness.stateCodec.decode(decoding.readVarBytes(decoder)));
+            }
+            int removedLen = decoding.readVarUint(decoder);
+            List<String> removed = new ArrayList<>(removedLen);
+            for (int j = 0; j < removedLen; j++) {
+                removed.add(decoding.readVarString(decoder));
+            }
 
             MetaClientState clientMeta = awareness.meta.get(clientID);
             Map<String, Object> prevState = awareness.states.get(clientID);
             int currClock = (clientMeta == null) ? 0 : clientMeta.clock;
+            if (currClock >= clock) {
+                continue;
+            }
+            if (currClock != clock - 1 || prevState == null) {
+                missing.add(clientID);
+                continue;
+            }
+            StateDelta delta = new StateDelta(clock, changed, removed);
+            awareness.putState(clientID, clock, delta.applyTo(prevState), null, delta, !delta.isEmpty(),
+                    timestamp, changes);
+        }
 
-            if (currClock < clock || (currClock == clock && state == null && awareness.states.containsKey(clientID))) {
-                if (state == null) {
-                    // 不允许远程客户端移除本地状态
-                    if (clientID == awareness.clientID && awareness.getLocalState() != null) {
-                        clock++; // 增加时钟表明客户端仍然存在
-                    } else {
-                        awareness.states.remove(clientID);
-                    }
-                } else {
-                    awareness.states.put(clientID, state);
-                }
+        changes.emit(awareness, origin);
+        return missing;
+    }
+
+    private void applyFullState(int clientID, int clock, byte[] encoded, long timestamp, Changes changes) {
+        MetaClientState clientMeta = meta.get(clientID);
+        Map<String, Object> prevState = states.get(clientID);
+        int currClock = (clientMeta == null) ? 0 : clientMeta.clock;
+        if (currClock > clock) {
+            return;
+        }
+        // 与缓存的编码相同时沿用原状态, 不再解析和深度比较
+        boolean unchanged = prevState != null && Arrays.equals(encoded, encodedStates.get(clientID));
+        Map<String, Object> state = unchanged ? prevState : decodeState(encoded);
+
+        if (currClock < clock || (currClock == clock && state == null && states.containsKey(clientID))) {
+            boolean changed = !unchanged && !deepEquals(state, prevState);
+            putState(clientID, clock, state, encoded, null, changed, timestamp, changes);
+        }
+    }
+
+    /**
+     * 记录客户端在clock时的状态, state为null表示移除
+     *
+     * @param encoded state的编码, 未知时为null
+     * @param delta   相对上一个时钟的增量, 没有时为null
+     * @param changed 状态是否与之前不同
+     */
+    private void putState(int clientID, int clock, Map<String, Object> state, byte[] encoded, StateDelta delta,
+                          boolean changed, long timestamp, Changes changes) {
+        MetaClientState clientMeta = meta.get(clientID);
+        Map<String, Object> prevState = states.get(clientID);
+        if (state == null) {
+            // 不允许远程客户端移除本地状态
+            if (clientID == this.clientID && getLocalState() != null) {
+                clock++; // 增加时钟表明客户端仍然存在
+            } else {
+                states.remove(clientID);
+                encodedStates.remove(clientID);
+                deltas.remove(clientID);
+            }
+        } else {
+            states.put(clientID, state);
+            if (encoded == null) {
+                encodedStates.remove(clientID);
+            } else {
+                encodedStates.put(clientID, encoded);
+            }
+            if (delta == null) {
+                deltas.remove(clientID);
+            } else {
+                deltas.put(clientID, delta);
+            }
+        }
 
-                awareness.meta.put(clientID, new MetaClientState(clock, timestamp));
-
-                if (clientMeta == null && state != null) {
-                    added.add(clientID);
-                } else if (clientMeta != null && state == null) {
-                    removed.add(clientID);
-                } else if (state != null) {
-                    if (!awareness.deepEquals(state, prevState)) {
-                        filteredUpdated.add(clientID);
-                    }
-                    updated.add(clientID);
+        meta.put(clientID, new MetaClientState(clock, timestamp));
+        // 同一秒内的更新共用一个条目
+        if (clientID != this.clientID && state != null &&
+                (prevState == null || clientMeta.lastUpdated != timestamp)) {
+            synchronized (expiries) {
+                expiries.add(new Expiry(clientID, timestamp));
+            }
+        }
+
+        if (clientMeta == null && state != null) {
+            changes.added.add(clientID);
+        } else if (clientMeta != null && state == null) {
+            changes.removed.add(clientID);
+        } else if (state != null) {
+            if (changed) {
+                changes.filteredUpdated.add(clientID);
+            }
+            changes.updated.add(clientID);
+        }
+    }
+
+    /**
+     * 一次更新中各客户端的变化
+     */
+    private static final class Changes {
+        final List<Integer> added = new ArrayList<>();
+        final List<Integer> updated = new ArrayList<>();
+        final List<Integer> filteredUpdated = new ArrayList<>();
+        final List<Integer> removed = new ArrayList<>();
+
+        void emit(Awareness awareness, String origin) {
+            if (!added.isEmpty() || !filteredUpdated.isEmpty() || !removed.isEmpty()) {
+                awareness.emit("change", new ChangeEvent(added, filteredUpdated, removed), origin);
+            }
+            if (!added.isEmpty() || !updated.isEmpty() || !removed.isEmpty()) {
+                awareness.emit("update", new UpdateEvent(added, updated, removed), origin);
+            }
+        }
+    }
+
+    /**
+     * 客户端状态从clock - 1到clock的变化: 新增或修改的字段, 以及删除的字段
+     */
+    private static final class StateDelta {
+        final int clock;
+        final Map<String, Object> changed;
+        final List<String> removed;
+
+        StateDelta(int clock, Map<String, Object> changed, List<String> removed) {
+            this.clock = clock;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        static StateDelta diff(int clock, Map<String, Object> prev, Map<String, Object> next) {
+            Map<String, Object> changed = new HashMap<>();
+            List<String> removed = new ArrayList<>();
+            next.forEach((key, value) -> {
+                if (!prev.containsKey(key) || !Objects.deepEquals(prev.get(key), value)) {
+                    changed.put(key, value);
+                }
+            });
+            for (String key : prev.keySet()) {
+                if (!next.containsKey(key)) {
+                    removed.add(key);
                 }
             }
+            return new StateDelta(clock, changed, removed);
         }
 
-        if (!added.isEmpty() || !filteredUpdated.isEmpty() || !removed.isEmpty()) {
-            awareness.emit("change", new ChangeEvent(added, filteredUpdated, removed), origin);
+        boolean isEmpty() {
+            return changed.isEmpty() && removed.isEmpty();
+        }
+
+        Map<String, Object> applyTo(Map<String, Object> prev) {
+            Map<String, Object> next = new HashMap<>(prev);
+            next.putAll(changed);
+            for (String key : removed) {
+                next.remove(key);
+            }
+            return next;
+        }
+    }
+
+    private static final class Expiry implements Comparable<Expiry> {
+        final int clientID;
+        final long lastUpdated;
+
+        Expiry(int clientID, long lastUpdated) {
+            this.clientID = clientID;
+            this.lastUpdated = lastUpdated;
         }
-        if (!added.isEmpty() || !updated.isEmpty() || !removed.isEmpty()) {
-            awareness.emit("update", new UpdateEvent(added, updated, removed), origin);
+
+        @Override
+        public int compareTo(Expiry o) {
+            return Long.compare(lastUpdated, o.lastUpdated);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 共用的超时检查线程, 第一次使用时创建
+     */
+    private static final class SharedScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "awareness-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package com.ai.protocol;
+
+import com.ai.myutils.decoder.decoding;
+import com.ai.myutils.encoder.Encoder;
+import com.ai.myutils.encoder.encoding;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * awareness状态在更新消息中的编码方式.
+ * 每个状态写成一个varUint8Array, 收发双方需使用相同的编码.
+ */
+public enum AwarenessStateCodec {
+    /**
+     * JSON字符串, 与yjs的y-protocols兼容(默认)
+     */
+    JSON {
+        @Override
+        public byte[] encode(Object state) {
+            return com.alibaba.fastjson.JSON.toJSONString(state).getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public Object decode(byte[] bytes) {
+            return com.alibaba.fastjson.JSON.parse(new String(bytes, StandardCharsets.UTF_8));
+        }
+    },
+    /**
+     * lib0的writeAny二进制格式, 不经过JSON文本, 只在双方都是本实现时使用
+     */
+    BINARY {
+        @Override
+        public byte[] encode(Object state) {
+            Encoder encoder = encoding.createEncoder();
+            encoding.writeAny(encoder, state);
+            return encoding.toByteArray(encoder);
+        }
+
+        @Override
+        public Object decode(byte[] bytes) {
+            return decoding.readAny(decoding.createDecoder(bytes));
+        }
+    };
+
+    public abstract byte[] encode(Object state);
+
+    public abstract Object decode(byte[] bytes);
+}
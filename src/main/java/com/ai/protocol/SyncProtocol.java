@@ -1,12 +1,15 @@
 package com.ai.protocol;
 
 import com.ai.Y;
+import com.ai.myutils.Uint8Array;
 import com.ai.myutils.decoder.Decoder;
 import com.ai.myutils.decoder.decoding;
 import com.ai.myutils.encoder.Encoder;
 import com.ai.myutils.encoder.encoding;
 import com.ai.utils.Doc;
 
+import java.nio.ByteBuffer;
+
 public class SyncProtocol {
     // 消息类型常量
     public static final int MESSAGE_YJS_SYNC_STEP_1 = 0;
@@ -22,7 +25,7 @@ public class SyncProtocol {
         // 写入消息类型
         encoding.writeVarUint(encoder, MESSAGE_YJS_SYNC_STEP_1);
         // 编码状态向量并写入
-        int[] stateVector = Y.encodeStateVector(doc);
+        byte[] stateVector = Y.encodeStateVectorBytes(doc);
         encoding.writeVarUint8Array(encoder, stateVector);
     }
 
@@ -33,10 +36,14 @@ public class SyncProtocol {
      * @param encodedStateVector 已编码的状态向量（可选）
      */
     public static void writeSyncStep2(Encoder encoder, Doc doc, int[] encodedStateVector) {
+        writeSyncStep2(encoder, doc, Uint8Array.toByteArray(encodedStateVector));
+    }
+
+    public static void writeSyncStep2(Encoder encoder, Doc doc, byte[] encodedStateVector) {
         // 写入消息类型
         encoding.writeVarUint(encoder, MESSAGE_YJS_SYNC_STEP_2);
         // 编码状态更新并写入
-        int[] stateUpdate = Y.encodeStateAsUpdate(doc, encodedStateVector);
+        byte[] stateUpdate = Y.encodeStateAsUpdateBytes(doc, encodedStateVector);
         encoding.writeVarUint8Array(encoder, stateUpdate);
     }
 
@@ -48,7 +55,7 @@ public class SyncProtocol {
      */
     public static void readSyncStep1(Decoder decoder, Encoder encoder, Doc doc) {
         // 读取状态向量并生成步骤2响应
-        int[] stateVector = decoding.readVarUint8Array(decoder);
+        byte[] stateVector = decoding.readVarBytes(decoder);
         writeSyncStep2(encoder, doc, stateVector);
     }
 
@@ -61,7 +68,8 @@ public class SyncProtocol {
     public static void readSyncStep2(Decoder decoder, Doc doc, Object transactionOrigin) {
         try {
             // 读取更新数据并应用到文档
-            int[] update = decoding.readVarUint8Array(decoder);
+            // 直接在消息的存储上解码更新, 不复制
+            ByteBuffer update = decoding.readVarUint8View(decoder);
             Y.applyUpdate(doc, update, transactionOrigin);
         } catch (Exception error) {
             // 捕获并记录事件处理程序抛出的错误
@@ -80,6 +88,11 @@ public class SyncProtocol {
         encoding.writeVarUint8Array(encoder, update);
     }
 
+    public static void writeUpdate(Encoder encoder, byte[] update) {
+        encoding.writeVarUint(encoder, MESSAGE_YJS_UPDATE);
+        encoding.writeVarUint8Array(encoder, update);
+    }
+
     /**
      * 读取并应用更新（复用readSyncStep2的实现）
      */
@@ -87,6 +100,14 @@ public class SyncProtocol {
         readSyncStep2(decoder, doc, transactionOrigin);
     }
 
+    /**
+     * 读取更新并交给batcher, 与其他更新合并后批量应用
+     */
+    public static void readUpdate(Decoder decoder, UpdateBatcher batcher) {
+        // 更新会在之后才应用, 复制出来而不是引用消息的存储
+        batcher.add(decoding.readVarBytes(decoder));
+    }
+
     /**
      * 读取同步消息并根据类型处理
      * @param decoder 消息解码器
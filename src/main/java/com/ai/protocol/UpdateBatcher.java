@@ -0,0 +1,170 @@
+package com.ai.protocol;
+
+import com.ai.utils.Doc;
+import com.ai.utils.Encoding;
+import com.ai.utils.codec.CodecFactory;
+import com.ai.utils.codec.UpdateFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 收集远程更新, 批量合并后在一个事务中应用到文档(见{@link Encoding#applyUpdates}).
+ * <p>
+ * 攒够maxUpdates个更新时在调用add的线程上立即应用, 否则第一个更新到达maxDelayMillis毫秒后在调度线程上应用,
+ * 所以一个更新最多延迟maxDelayMillis. 应用更新时持有本对象的锁, 同一文档的更新应只通过一个batcher应用.
+ * <p>
+ * 批量合并失败时(例如其中一个更新损坏)改为逐个应用这一批更新, 其它更新仍被应用, 失败的更新交给{@link #onError}设置的处理器.
+ */
+public class UpdateBatcher implements AutoCloseable {
+    private final Doc doc;
+    private final Object transactionOrigin;
+    private final int maxUpdates;
+    private final long maxDelayMillis;
+    private final CodecFactory format;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private List<byte[]> pending = new ArrayList<>();
+    private ScheduledFuture<?> flushTask;
+    private boolean closed;
+    private BiConsumer<byte[], RuntimeException> errorHandler;
+
+    public UpdateBatcher(Doc doc, Object transactionOrigin, int maxUpdates, long maxDelayMillis) {
+        this(doc, transactionOrigin, maxUpdates, maxDelayMillis, UpdateFormat.V1, null);
+    }
+
+    /**
+     * @param format    更新的格式
+     * @param scheduler 定时应用的调度器, 为null时创建一个单线程调度器, 在close时关闭
+     */
+    public UpdateBatcher(Doc doc, Object transactionOrigin, int maxUpdates, long maxDelayMillis,
+                         CodecFactory format, ScheduledExecutorService scheduler) {
+        if (maxUpdates < 1) {
+            throw new IllegalArgumentException("maxUpdates must be at least 1: " + maxUpdates);
+        }
+        this.doc = doc;
+        this.transactionOrigin = transactionOrigin;
+        this.maxUpdates = maxUpdates;
+        this.maxDelayMillis = maxDelayMillis;
+        this.format = format;
+        this.ownsScheduler = scheduler == null;
+        this.scheduler = scheduler == null ? Executors.newSingleThreadScheduledExecutor() : scheduler;
+    }
+
+    /**
+     * 设置无法应用的更新的处理器. 没有设置时flush在应用其它更新后抛出第一个错误(其余的作为suppressed),
+     * 定时应用时只记录错误
+     */
+    public synchronized void onError(BiConsumer<byte[], RuntimeException> handler) {
+        this.errorHandler = handler;
+    }
+
+    /**
+     * 加入一个更新, 调用后update不能再被修改
+     */
+    public synchronized void add(byte[] update) {
+        if (closed) {
+            throw new IllegalStateException("UpdateBatcher is closed");
+        }
+        pending.add(update);
+        if (pending.size() >= maxUpdates) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = scheduler.schedule(this::scheduledFlush, maxDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 立即应用所有等待中的更新
+     */
+    public synchronized void flush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<byte[]> batch = pending;
+        pending = new ArrayList<>();
+        try {
+            Encoding.applyUpdates(doc, batch, transactionOrigin, format);
+        } catch (RuntimeException error) {
+            if (batch.size() == 1) {
+                reportErrors(batch, Collections.singletonList(error));
+            } else {
+                applyOneByOne(batch);
+            }
+        }
+    }
+
+    /**
+     * 合并失败后逐个应用, 已经应用过的部分不会重复生效
+     */
+    private void applyOneByOne(List<byte[]> batch) {
+        List<byte[]> failed = new ArrayList<>();
+        List<RuntimeException> errors = new ArrayList<>();
+        for (byte[] update : batch) {
+            try {
+                Encoding.applyUpdateV2(doc, update, transactionOrigin, format);
+            } catch (RuntimeException error) {
+                failed.add(update);
+                errors.add(error);
+            }
+        }
+        if (!failed.isEmpty()) {
+            reportErrors(failed, errors);
+        }
+    }
+
+    private void reportErrors(List<byte[]> failed, List<RuntimeException> errors) {
+        if (errorHandler != null) {
+            for (int i = 0; i < failed.size(); i++) {
+                errorHandler.accept(failed.get(i), errors.get(i));
+            }
+            return;
+        }
+        RuntimeException first = errors.get(0);
+        for (int i = 1; i < errors.size(); i++) {
+            first.addSuppressed(errors.get(i));
+        }
+        throw first;
+    }
+
+    /**
+     * 等待中的更新数
+     */
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception error) {
+            // 调度线程上的异常没有调用方接收, 与SyncProtocol一样只记录
+            System.err.println("处理Yjs更新时发生错误: " + error);
+        }
+    }
+
+    /**
+     * 应用剩余的更新并停止定时应用
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        flush();
+        closed = true;
+        if (ownsScheduler) {
+            scheduler.shutdown();
+        }
+    }
+}
@@ -31,17 +31,22 @@ public class ContentAny extends AbstractContent {
     }
 
     public ContentAny copy() {
-        return new ContentAny(arr);
+        return new ContentAny(new ArrayList<>(arr));
     }
 
     public ContentAny splice(int offset) {
-        ContentAny right = new ContentAny(arr.subList(offset, arr.size()));
-        arr = arr.subList(0, offset);
+        // 复制而不是subList视图, 之后合并时两边互不影响
+        ContentAny right = new ContentAny(new ArrayList<>(arr.subList(offset, arr.size())));
+        arr = new ArrayList<>(arr.subList(0, offset));
         return right;
     }
 
     @Override
     public boolean mergeWith(AbstractContent right) {
+        // arr可能是不可修改的列表(如Collections.singletonList)
+        if (!(arr instanceof ArrayList)) {
+            arr = new ArrayList<>(arr);
+        }
         arr.addAll(((ContentAny) right).arr);
         return true;
     }
@@ -35,7 +35,7 @@ public class ContentJSON extends AbstractContent {
     }
 
     public ContentJSON splice(int offset) {
-        ContentJSON right = new ContentJSON(arr.subList(offset, arr.size()));
+        ContentJSON right = new ContentJSON(new ArrayList<>(arr.subList(offset, arr.size())));
         arr = new ArrayList<>(arr.subList(0, offset));
         return right;
     }
@@ -98,6 +98,7 @@ public class ContentType extends AbstractContent {
             item = item.right;
         }
         type._start = null;
+        type._index = null;
 
         for (Map.Entry<String, Item> entry : type._map.entrySet()) {
             Item mapItem = entry.getValue();
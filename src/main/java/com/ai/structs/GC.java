@@ -36,7 +36,7 @@ public class GC extends AbstractStruct {
             this.id.clock += offset;
             this.length -= offset;
         }
-        StructStore.addStruct(transaction.doc.store, this);
+        StructStore.addStruct(transaction, this);
     }
 
     @Override
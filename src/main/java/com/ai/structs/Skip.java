@@ -23,7 +23,8 @@ public class Skip extends AbstractStruct {
         // Skip structs cannot be deleted
     }
 
-    public boolean mergeWith(Skip right) {
+    @Override
+    public boolean mergeWith(AbstractStruct right) {
         if (this.getClass() != right.getClass()) {
             return false;
         }
@@ -0,0 +1,75 @@
+package com.ai.structs.item;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Item.integrate解决并发插入冲突时扫描过的项, 按扫描顺序记录.
+ * 代替itemsBeforeOrigin/conflictingItems两个集合: 前者是全部记录的项, 后者是conflictStart之后记录的项.
+ * 每个线程复用一个实例; 扫描较长时才建立位置索引.
+ */
+final class ConflictScan {
+    private static final int LINEAR_LIMIT = 16;
+    private static final ThreadLocal<ConflictScan> CURRENT = ThreadLocal.withInitial(ConflictScan::new);
+
+    private Item[] items = new Item[LINEAR_LIMIT];
+    private int size;
+    private Map<Item, Integer> positions;
+    int conflictStart;
+
+    static ConflictScan get() {
+        ConflictScan scan = CURRENT.get();
+        scan.reset();
+        return scan;
+    }
+
+    void add(Item item) {
+        if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        if (positions != null) {
+            positions.put(item, size);
+        } else if (size == LINEAR_LIMIT) {
+            positions = new IdentityHashMap<>();
+            for (int i = 0; i < size; i++) {
+                positions.put(items[i], i);
+            }
+            positions.put(item, size);
+        }
+        items[size++] = item;
+    }
+
+    /**
+     * 清空conflictingItems
+     */
+    void clearConflicts() {
+        conflictStart = size;
+    }
+
+    /**
+     * @return 项在扫描中的位置(按引用比较), 没有扫描过时为-1
+     */
+    int indexOf(Object item) {
+        if (positions != null) {
+            Integer pos = positions.get(item);
+            return pos == null ? -1 : pos;
+        }
+        for (int i = 0; i < size; i++) {
+            if (items[i] == item) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 释放对项的引用
+     */
+    void reset() {
+        Arrays.fill(items, 0, size, null);
+        size = 0;
+        conflictStart = 0;
+        positions = null;
+    }
+}
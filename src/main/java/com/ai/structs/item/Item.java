@@ -4,7 +4,8 @@ import com.ai.myutils.binary;
 import com.ai.structs.*;
 import com.ai.types.*;
 import com.ai.types.arraytype.AbstractType;
-import com.ai.types.arraytype.ArraySearchMarker;
+import com.ai.types.arraytype.ListIndex;
+import com.ai.types.arraytype.SearchMarkers;
 import com.ai.types.vo.ItemDiffResult;
 import com.ai.utils.DeleteSet;
 import com.ai.utils.Doc;
@@ -30,6 +31,10 @@ public class Item extends AbstractStruct {
     public ID redone;
     public AbstractContent content;
     public int info;
+    /**
+     * 在父类型ListIndex中的节点, 没有索引时为null
+     */
+    public ListIndex.Node indexNode;
 
     @Override
     public String toString() {
@@ -218,39 +223,40 @@ public class Item extends AbstractStruct {
                 if (leftTrace != null) {
                     o = leftTrace.right;
                 } else if (parentSub != null) {
-                    o = ((AbstractType<?>) parent)._map.get(parentSub);
-                    while (o != null && o.left != null) o = o.left;
+                    o = ((AbstractType<?>) parent).mapChainStart(parentSub);
                 } else {
                     o = ((AbstractType<?>) parent)._start;
                 }
 
-                Set<Item> conflictingItems = new LinkedHashSet<>();
-                Set<Item> itemsBeforeOrigin = new LinkedHashSet<>();
+                // itemsBeforeOrigin是扫描过的所有项, conflictingItems是scan.conflictStart之后扫描的项
+                ConflictScan scan = ConflictScan.get();
 
                 while (o != null && o != right) {
-                    itemsBeforeOrigin.add(o);
-                    conflictingItems.add(o);
+                    scan.add(o);
 
                     if (ID.compareIDs(origin, o.origin)) {
                         // case 1
                         if (o.id.client < id.client) {
                             leftTrace = o;
-                            conflictingItems.clear();
+                            scan.clearConflicts();
                         } else if (ID.compareIDs(rightOrigin, o.rightOrigin)) {
                             // this and o are conflicting and point to the same integration points
                             break;
                         }
-                    } else if (o.origin != null && itemsBeforeOrigin.contains(StructStore.getItem(transaction.doc.store, o.origin))) {
+                    } else {
+                        int originPos = o.origin == null ? -1 : scan.indexOf(originItem(transaction, o));
+                        if (originPos < 0) {
+                            break;
+                        }
                         // case 2
-                        if (!conflictingItems.contains(StructStore.getItem(transaction.doc.store, o.origin))) {
+                        if (originPos < scan.conflictStart) {
                             leftTrace = o;
-                            conflictingItems.clear();
+                            scan.clearConflicts();
                         }
-                    } else {
-                        break;
                     }
                     o = o.right;
                 }
+                scan.reset();
                 left = leftTrace;
             }
 
@@ -262,8 +268,7 @@ public class Item extends AbstractStruct {
             } else {
                 Item r;
                 if (parentSub != null) {
-                    r = ((AbstractType<?>) parent)._map.get(parentSub);
-                    while (r != null && r.left != null) r = r.left;
+                    r = ((AbstractType<?>) parent).mapChainStart(parentSub);
                 } else {
                     r = ((AbstractType<?>) parent)._start;
                     ((AbstractType<?>) parent)._start = this;
@@ -286,8 +291,11 @@ public class Item extends AbstractStruct {
             if (parentSub == null && countable() && !deleted()) {
                 ((AbstractType<?>) parent)._length += length;
             }
+            if (parentSub == null && ((AbstractType<?>) parent)._index != null) {
+                ((AbstractType<?>) parent)._index.insertAfter(left, this);
+            }
 
-            StructStore.addStruct(transaction.doc.store, this);
+            StructStore.addStruct(transaction, this);
             content.integrate(transaction, this);
             // add parent to transaction.changed
             Transaction.addChangedTypeToTransaction(transaction, (AbstractType<?>) parent, parentSub);
@@ -304,13 +312,29 @@ public class Item extends AbstractStruct {
         }
     }
 
+    /**
+     * 包含o.origin的项. o通常紧跟在它的origin之后, 先检查o.left, 不是时再在StructStore中查找
+     */
+    private static AbstractStruct originItem(Transaction transaction, Item o) {
+        Item l = o.left;
+        if (l != null && l.id.client == o.origin.client &&
+                l.id.clock <= o.origin.clock && o.origin.clock < l.id.clock + l.length) {
+            return l;
+        }
+        return StructStore.getItem(transaction.doc.store, o.origin);
+    }
+
     /**
      * Try to merge two items
      */
-    public boolean mergeWith(Item rightItem) {
-        if (getClass() != rightItem.getClass() ||
-                !ID.compareIDs(rightItem.origin, getLastId()) ||
-                right != rightItem ||
+    @Override
+    public boolean mergeWith(AbstractStruct right) {
+        if (getClass() != right.getClass()) {
+            return false;
+        }
+        Item rightItem = (Item) right;
+        if (!ID.compareIDs(rightItem.origin, getLastId()) ||
+                this.right != rightItem ||
                 !ID.compareIDs(rightOrigin, rightItem.rightOrigin) ||
                 id.client != rightItem.id.client ||
                 id.clock + length != rightItem.id.clock ||
@@ -322,29 +346,26 @@ public class Item extends AbstractStruct {
             return false;
         }
 
-        List<ArraySearchMarker> searchMarker = ((AbstractType<?>) parent)._searchMarker;
+        // 合并更新时parent可能还是ID或根类型的名称
+        SearchMarkers searchMarker = parent instanceof AbstractType ? ((AbstractType<?>) parent)._searchMarker : null;
         if (searchMarker != null) {
-            for (ArraySearchMarker marker : searchMarker) {
-                if (marker.p == rightItem) {
-                    // right is going to be "forgotten" so we need to update the marker
-                    marker.p = this;
-                    // adjust marker index
-                    if (!deleted() && countable()) {
-                        marker.index -= length;
-                    }
-                }
-            }
+            searchMarker.merged(this, rightItem);
         }
 
         if (rightItem.keep()) {
             setKeep(true);
         }
 
-        right = rightItem.right;
-        if (right != null) {
-            right.left = this;
+        this.right = rightItem.right;
+        if (this.right != null) {
+            this.right.left = this;
         }
         length += rightItem.length;
+        if (indexNode != null && ((AbstractType<?>) parent)._index != null) {
+            ListIndex index = ((AbstractType<?>) parent)._index;
+            index.remove(rightItem);
+            index.update(this);
+        }
         return true;
     }
 
@@ -360,6 +381,9 @@ public class Item extends AbstractStruct {
                 parent._length -= length;
             }
             markDeleted();
+            if (indexNode != null && parent._index != null) {
+                parent._index.update(this);
+            }
             DeleteSet.addToDeleteSet(transaction.deleteSet, id.client, id.clock, length);
             Transaction.addChangedTypeToTransaction(transaction, parent, parentSub);
             content.delete(transaction);
@@ -536,6 +560,11 @@ public class Item extends AbstractStruct {
         }
 
         leftItem.length = diff;
+        if (leftItem.indexNode != null && ((AbstractType<?>) leftItem.parent)._index != null) {
+            ListIndex index = ((AbstractType<?>) leftItem.parent)._index;
+            index.update(leftItem);
+            index.insertAfter(leftItem, rightItem);
+        }
         return rightItem;
     }
 
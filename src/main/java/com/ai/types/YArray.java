@@ -3,7 +3,7 @@ package com.ai.types;
 import com.ai.myutils.observable.TriConsumer;
 import com.ai.structs.item.Item;
 import com.ai.types.arraytype.AbstractType;
-import com.ai.types.arraytype.ArraySearchMarker;
+import com.ai.types.arraytype.SearchMarkers;
 import com.ai.types.vo.YArrayEvent;
 import com.ai.utils.Doc;
 import com.ai.utils.Transaction;
@@ -28,14 +28,13 @@ import static com.ai.utils.Transaction.transact;
 public class YArray<T> extends AbstractType<YEvent> implements Iterable<T> {
     // 临时存储初始化内容
     private List<T> _prelimContent = new ArrayList<>();
-    // 搜索标记列表
-    private List<ArraySearchMarker> _searchMarker = new ArrayList<>();
 
     /**
      * 构造空数组
      */
     public YArray() {
         super();
+        this._searchMarker = new SearchMarkers();
     }
 
     /**
@@ -118,6 +117,20 @@ public class YArray<T> extends AbstractType<YEvent> implements Iterable<T> {
         }
     }
 
+    /**
+     * 在指定位置批量插入元素, 在一个事务中完成.
+     * 连续的JSON值合并为一个ContentAny项, 搜索标记只更新一次
+     * @param index 插入位置
+     * @param values 要插入的元素
+     */
+    public void insertAll(int index, Iterable<? extends T> values) {
+        List<T> content = new ArrayList<>();
+        values.forEach(content::add);
+        if (!content.isEmpty()) {
+            insert(index, content);
+        }
+    }
+
     /**
      * 追加元素到数组末尾
      * @param content 要追加的内容列表
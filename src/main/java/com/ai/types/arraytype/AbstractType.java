@@ -28,12 +28,20 @@ public class AbstractType<EventType> {
     public static final Item UNDEFINED_ITEM = new Item();
     public Item _item = UNDEFINED_ITEM;
     public Map<String, Item> _map = new HashMap<>();
+    /**
+     * 每个key的值历史(从_map中的当前值向左)的第一项, 见mapChainStart
+     */
+    private Map<String, Item> _mapChainStarts;
     public Item _start = null;
     public Doc doc = null;
     public int _length = 0;
     protected EventHandler<YEvent, Transaction> _eH = new EventHandler<>();
     public EventHandler<List<YEvent<?>>, Transaction> _dEH = new EventHandler<>();
-    public List<ArraySearchMarker> _searchMarker = null;
+    public SearchMarkers _searchMarker = null;
+    /**
+     * 列表项的顺序统计树, 只在DocOptions.listIndex开启时存在
+     */
+    public ListIndex _index = null;
 
     // 获取父类型
     public AbstractType<?> parent() {
@@ -44,6 +52,10 @@ public class AbstractType<EventType> {
     public void _integrate(Doc y, Item item) {
         this.doc = y;
         this._item = item;
+        if (y.listIndex) {
+            this._index = ListIndex.build(_start);
+            this._searchMarker = null;
+        }
     }
 
     // 复制此类型(抽象方法)
@@ -61,6 +73,28 @@ public class AbstractType<EventType> {
 
     }
 
+    /**
+     * key的值历史中最左边的项, 没有值时为null.
+     * 链表头只会因为有项插到它前面而改变, 所以从缓存的链表头向左走, 只经过之后插入的项
+     */
+    public Item mapChainStart(String key) {
+        if (_mapChainStarts == null) {
+            _mapChainStarts = new HashMap<>();
+        }
+        Item start = _mapChainStarts.get(key);
+        if (start == null) {
+            start = _map.get(key);
+            if (start == null) {
+                return null;
+            }
+        }
+        while (start.left != null) {
+            start = start.left;
+        }
+        _mapChainStarts.put(key, start);
+        return start;
+    }
+
     // 获取第一个未删除的项
     public Item _first() {
         Item n = _start;
@@ -135,7 +169,7 @@ public class AbstractType<EventType> {
             }
             type = (AbstractType<?>) type._item.parent;
         }
-        EventHandler.callEventHandlerListeners(changedType._eH, event, transaction);
+        transaction.doc.callObservers(changedType._eH, event, transaction);
     }
 
     // 类型列表切片
@@ -401,7 +435,7 @@ public class AbstractType<EventType> {
         }
         if (index == 0) {
             if (parent._searchMarker != null) {
-                ArraySearchMarker.updateMarkerChanges(parent._searchMarker, index, content.size());
+                parent._searchMarker.updateChanges(index, content.size());
             }
             typeListInsertGenericsAfter(transaction, parent, null, content);
             return;
@@ -432,7 +466,7 @@ public class AbstractType<EventType> {
         }
 
         if (parent._searchMarker != null) {
-            ArraySearchMarker.updateMarkerChanges(parent._searchMarker, startIndex, content.size());
+            parent._searchMarker.updateChanges(startIndex, content.size());
         }
         typeListInsertGenericsAfter(transaction, parent, n, content);
     }
@@ -447,18 +481,15 @@ public class AbstractType<EventType> {
     public static void typeListPushGenerics(Transaction transaction,
                                             AbstractType<?> parent,
                                             List<?> content) {
-        // 获取所有搜索标记，如果没有则为空列表
-        List<ArraySearchMarker> searchMarkers = Optional.ofNullable(parent._searchMarker)
-                .orElse(Collections.emptyList());
-
-        // 找到索引最大的标记，如果没有则使用默认值(index=0, p=parent._start)
-        ArraySearchMarker marker = searchMarkers.stream()
-                .reduce(new ArraySearchMarker(0, parent._start),
-                        (currentMax, maxMarker) ->
-                                maxMarker.index > currentMax.index ? maxMarker : currentMax);
+        if (parent._index != null) {
+            typeListInsertGenericsAfter(transaction, parent, parent._index.last(), content);
+            return;
+        }
+        // 找到索引最大的标记，如果没有则从parent._start开始
+        ArraySearchMarker marker = parent._searchMarker == null ? null : parent._searchMarker.last();
 
         // 从标记指向的节点开始，找到最右边的节点
-        Item n = marker.p;
+        Item n = marker == null ? parent._start : marker.p;
         if (n != null) {
             while (n.right != null) {
                 n = n.right;
@@ -507,7 +538,7 @@ public class AbstractType<EventType> {
         }
 
         if (parent._searchMarker != null) {
-            ArraySearchMarker.updateMarkerChanges(parent._searchMarker, startIndex, -startLength + length);
+            parent._searchMarker.updateChanges(startIndex, -startLength + length);
         }
     }
 
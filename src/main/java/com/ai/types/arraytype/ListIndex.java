@@ -0,0 +1,207 @@
+package com.ai.types.arraytype;
+
+import com.ai.structs.item.Item;
+
+/**
+ * 类型列表的顺序统计树(按链表顺序排列的treap), 每个节点记录子树中未删除的可计数内容长度,
+ * 按索引查找项、取最后一项都是O(log n).
+ * <p>
+ * 由Item在integrate/delete/split/merge时维护, 见{@link com.ai.utils.DocOptions#listIndex}.
+ */
+public final class ListIndex {
+
+    public static final class Node {
+        final Item item;
+        final int priority;
+        Node parent;
+        Node left;
+        Node right;
+        int weight;
+        int sum;
+
+        Node(Item item, int priority) {
+            this.item = item;
+            this.priority = priority;
+            this.weight = weightOf(item);
+            this.sum = weight;
+        }
+    }
+
+    private Node root;
+    private int seed = 0x2545F491;
+
+    /**
+     * 按链表顺序为已有的项建立索引
+     */
+    public static ListIndex build(Item start) {
+        ListIndex index = new ListIndex();
+        Item left = null;
+        for (Item n = start; n != null; n = n.right) {
+            index.insertAfter(left, n);
+            left = n;
+        }
+        return index;
+    }
+
+    private static int weightOf(Item item) {
+        return !item.deleted() && item.countable() ? item.length : 0;
+    }
+
+    private int nextPriority() {
+        // xorshift
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    /**
+     * 未删除的可计数内容总长度, 即类型的_length
+     */
+    public int length() {
+        return root == null ? 0 : root.sum;
+    }
+
+    /**
+     * 在left之后插入item, left为null时插入到最前面
+     */
+    public void insertAfter(Item left, Item item) {
+        Node node = new Node(item, nextPriority());
+        item.indexNode = node;
+        if (root == null) {
+            root = node;
+            return;
+        }
+        Node p;
+        if (left == null) {
+            p = root;
+            while (p.left != null) {
+                p = p.left;
+            }
+            p.left = node;
+        } else if (left.indexNode.right == null) {
+            p = left.indexNode;
+            p.right = node;
+        } else {
+            p = left.indexNode.right;
+            while (p.left != null) {
+                p = p.left;
+            }
+            p.left = node;
+        }
+        node.parent = p;
+        for (Node a = p; a != null; a = a.parent) {
+            a.sum += node.weight;
+        }
+        while (node.parent != null && node.priority > node.parent.priority) {
+            rotateUp(node);
+        }
+    }
+
+    /**
+     * 项被删除或长度改变后更新计数
+     */
+    public void update(Item item) {
+        Node node = item.indexNode;
+        int diff = weightOf(item) - node.weight;
+        if (diff != 0) {
+            node.weight += diff;
+            for (Node a = node; a != null; a = a.parent) {
+                a.sum += diff;
+            }
+        }
+    }
+
+    /**
+     * 移除项(合并到左侧项时)
+     */
+    public void remove(Item item) {
+        Node node = item.indexNode;
+        item.indexNode = null;
+        for (Node a = node; a != null; a = a.parent) {
+            a.sum -= node.weight;
+        }
+        node.weight = 0;
+        while (node.left != null || node.right != null) {
+            Node child = node.right == null || (node.left != null && node.left.priority > node.right.priority)
+                    ? node.left : node.right;
+            rotateUp(child);
+        }
+        replaceChild(node.parent, node, null);
+    }
+
+    /**
+     * 包含索引位置的项, index超出时为最后一个可计数的项. 没有可计数的项时返回null
+     *
+     * @return 不设置Item.marker的临时标记, p为找到的项, index为其起始位置
+     */
+    public ArraySearchMarker find(int index) {
+        if (root == null || root.sum == 0) {
+            return null;
+        }
+        if (index >= root.sum) {
+            index = root.sum - 1;
+        }
+        Node n = root;
+        int start = 0;
+        while (true) {
+            int leftSum = n.left == null ? 0 : n.left.sum;
+            if (index < leftSum) {
+                n = n.left;
+            } else if (index < leftSum + n.weight) {
+                return new ArraySearchMarker(n.item, start + leftSum);
+            } else {
+                index -= leftSum + n.weight;
+                start += leftSum + n.weight;
+                n = n.right;
+            }
+        }
+    }
+
+    /**
+     * 链表中的最后一项
+     */
+    public Item last() {
+        if (root == null) {
+            return null;
+        }
+        Node n = root;
+        while (n.right != null) {
+            n = n.right;
+        }
+        return n.item;
+    }
+
+    private void rotateUp(Node node) {
+        Node p = node.parent;
+        Node g = p.parent;
+        if (p.left == node) {
+            p.left = node.right;
+            if (node.right != null) {
+                node.right.parent = p;
+            }
+            node.right = p;
+        } else {
+            p.right = node.left;
+            if (node.left != null) {
+                node.left.parent = p;
+            }
+            node.left = p;
+        }
+        p.parent = node;
+        node.parent = g;
+        replaceChild(g, p, node);
+        p.sum = p.weight + (p.left == null ? 0 : p.left.sum) + (p.right == null ? 0 : p.right.sum);
+        node.sum = node.weight + (node.left == null ? 0 : node.left.sum) + (node.right == null ? 0 : node.right.sum);
+    }
+
+    private void replaceChild(Node parent, Node child, Node replacement) {
+        if (parent == null) {
+            root = replacement;
+        } else if (parent.left == child) {
+            parent.left = replacement;
+        } else {
+            parent.right = replacement;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.ai.types.arraytype;
+
+import com.ai.structs.item.Item;
+
+/**
+ * 一个类型的搜索标记: 缓存最近用过的(项, 索引)位置, 按索引查找时从最近的标记开始遍历.
+ * 固定大小的数组, 满了之后替换最久未使用的标记. 使用时钟只属于这个类型, 不同文档之间不共享状态.
+ */
+public final class SearchMarkers {
+    static final int MAX_SEARCH_MARKER = 80;
+
+    private final ArraySearchMarker[] markers = new ArraySearchMarker[MAX_SEARCH_MARKER];
+    private int size;
+    private long clock;
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            markers[i].p.setMarker(false);
+            markers[i] = null;
+        }
+        size = 0;
+    }
+
+    /**
+     * 索引最大的标记, 没有标记时为null
+     */
+    public ArraySearchMarker last() {
+        ArraySearchMarker last = null;
+        for (int i = 0; i < size; i++) {
+            if (last == null || markers[i].index > last.index) {
+                last = markers[i];
+            }
+        }
+        return last;
+    }
+
+    private void overwrite(ArraySearchMarker marker, Item p, int index) {
+        marker.p.setMarker(false);
+        marker.p = p;
+        p.setMarker(true);
+        marker.index = index;
+        marker.timestamp = ++clock;
+    }
+
+    ArraySearchMarker mark(Item p, int index) {
+        if (size >= MAX_SEARCH_MARKER) {
+            ArraySearchMarker oldest = markers[0];
+            for (int i = 1; i < size; i++) {
+                if (markers[i].timestamp < oldest.timestamp) {
+                    oldest = markers[i];
+                }
+            }
+            overwrite(oldest, p, index);
+            return oldest;
+        }
+        ArraySearchMarker marker = new ArraySearchMarker(index, p);
+        marker.timestamp = ++clock;
+        markers[size++] = marker;
+        return marker;
+    }
+
+    /**
+     * 找到包含index的项并标记它, 见{@link ArraySearchMarker#findMarker}
+     */
+    ArraySearchMarker find(AbstractType<?> yarray, int index) {
+        ArraySearchMarker marker = null;
+        int distance = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int d = Math.abs(index - markers[i].index);
+            if (d < distance) {
+                marker = markers[i];
+                distance = d;
+            }
+        }
+
+        Item p = yarray._start;
+        int pindex = 0;
+
+        if (marker != null) {
+            p = marker.p;
+            pindex = marker.index;
+            marker.timestamp = ++clock;
+        }
+
+        // Iterate to right if possible
+        while (p.right != null && pindex < index) {
+            if (!p.deleted() && p.countable()) {
+                if (index < pindex + p.length) {
+                    break;
+                }
+                pindex += p.length;
+            }
+            p = p.right;
+        }
+
+        // Iterate to left if necessary
+        while (p.left != null && pindex > index) {
+            p = p.left;
+            if (!p.deleted() && p.countable()) {
+                pindex -= p.length;
+            }
+        }
+
+        // Make sure p can't be merged with left
+        while (p.left != null &&
+                p.left.id.client == p.id.client &&
+                p.left.id.clock + p.left.length == p.id.clock) {
+            p = p.left;
+            if (!p.deleted() && p.countable()) {
+                pindex -= p.length;
+            }
+        }
+
+        if (marker != null && Math.abs(marker.index - pindex) < p.length / MAX_SEARCH_MARKER) {
+            overwrite(marker, p, pindex);
+            return marker;
+        } else {
+            return mark(p, pindex);
+        }
+    }
+
+    /**
+     * 在index处插入(len > 0)或删除(len < 0)了|len|个元素后调整标记
+     */
+    public void updateChanges(int index, int len) {
+        // 从后往前遍历, 移除的标记用最后一个替换
+        for (int i = size - 1; i >= 0; i--) {
+            ArraySearchMarker m = markers[i];
+
+            if (len > 0) { // 处理插入情况
+                Item p = m.p;
+                p.setMarker(false);
+
+                // 向前查找第一个可计数的未删除项
+                while (p != null && (p.deleted() || !p.countable())) {
+                    p = p.left;
+                    if (p != null && !p.deleted() && p.countable()) {
+                        // 调整位置索引
+                        m.index -= p.length;
+                    }
+                }
+
+                // 如果找不到有效位置或位置已被标记，则移除该标记
+                if (p == null || p.marker()) {
+                    markers[i] = markers[--size];
+                    markers[size] = null;
+                    continue;
+                }
+
+                m.p = p;
+                p.setMarker(true);
+            }
+
+            // 更新标记索引
+            if (index < m.index || (len > 0 && index == m.index)) {
+                m.index = Math.max(index, m.index + len);
+            }
+        }
+    }
+
+    /**
+     * rightItem合并到item之后, 指向rightItem的标记改为指向item
+     */
+    public void merged(Item item, Item rightItem) {
+        for (int i = 0; i < size; i++) {
+            ArraySearchMarker marker = markers[i];
+            if (marker.p == rightItem) {
+                // right is going to be "forgotten" so we need to update the marker
+                marker.p = item;
+                // adjust marker index
+                if (!item.deleted() && item.countable()) {
+                    marker.index -= item.length;
+                }
+            }
+        }
+    }
+}
@@ -5,9 +5,9 @@ package com.ai.types.vo;
  */
 public class ClientStruct {
     public int written;           // 写入数量
-    public int[] restEncoder;    // 编码数据
+    public byte[] restEncoder;   // 编码数据
 
-    public ClientStruct(int written, int[] restEncoder) {
+    public ClientStruct(int written, byte[] restEncoder) {
         this.written = written;
         this.restEncoder = restEncoder;
     }
@@ -11,8 +11,10 @@ import com.ai.utils.structstore.StructStore;
 import com.ai.utils.Transaction;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class ItemTextListPosition {
     public Item left;
@@ -102,7 +104,15 @@ public class ItemTextListPosition {
         ArraySearchMarker marker = useSearchMarker ? ArraySearchMarker.findMarker(parent, index) : null;
 
         if (marker != null) {
-            ItemTextListPosition pos = new ItemTextListPosition(marker.p.left, marker.p, marker.index, currentAttributes);
+            Item right = marker.p;
+            if (parent instanceof YText && ((YText) parent)._hasFormatting) {
+                // 与从_start开始查找一样停在前一个内容项之后, 即marker.p之前的格式项之前
+                while (right.left != null && (right.left.deleted() || !right.left.countable())) {
+                    right = right.left;
+                }
+                collectAttributes(right.left, currentAttributes);
+            }
+            ItemTextListPosition pos = new ItemTextListPosition(right.left, right, marker.index, currentAttributes);
             return findNextPosition(transaction, pos, index - marker.index);
         } else {
             ItemTextListPosition pos = new ItemTextListPosition(null, parent._start, 0, currentAttributes);
@@ -110,6 +120,22 @@ public class ItemTextListPosition {
         }
     }
 
+    /**
+     * 从item向左收集在item之后生效的格式属性, 与从_start开始forward得到的currentAttributes相同:
+     * 每个key取最右边的未删除ContentFormat, 值为null表示格式已结束
+     */
+    private static void collectAttributes(Item item, Map<String, Object> currentAttributes) {
+        Set<String> seen = new HashSet<>();
+        for (Item n = item; n != null; n = n.left) {
+            if (!n.deleted() && n.content instanceof ContentFormat) {
+                ContentFormat format = (ContentFormat) n.content;
+                if (seen.add(format.key) && format.value != null) {
+                    currentAttributes.put(format.key, format.value);
+                }
+            }
+        }
+    }
+
     /**
      * Negate applied formats
      *
@@ -6,7 +6,7 @@ import com.ai.structs.item.AbstractContent;
 import com.ai.structs.item.Item;
 import com.ai.types.ID;
 import com.ai.types.arraytype.AbstractType;
-import com.ai.types.arraytype.ArraySearchMarker;
+import com.ai.types.arraytype.SearchMarkers;
 import com.ai.utils.*;
 import com.ai.utils.codec.decoder.UpdateDecoder;
 import com.ai.utils.codec.encoder.UpdateEncoder;
@@ -15,6 +15,8 @@ import org.apache.commons.collections4.MapUtils;
 
 import java.util.*;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.ai.structs.ContentType.YTextRefID;
 import static com.ai.types.ytext.ItemTextListPosition.updateCurrentAttributes;
@@ -27,7 +29,6 @@ import static com.ai.utils.Snapshot.splitSnapshotAffectedStructs;
 public class YText extends AbstractType<YTextEvent> {
 
     private List<Runnable> _pending;
-    public List<ArraySearchMarker> _searchMarker;
     public boolean _hasFormatting;
 
     /**
@@ -47,7 +48,7 @@ public class YText extends AbstractType<YTextEvent> {
         this._pending = initialText != null ?
                 Collections.singletonList(() -> this.insert(0, initialText, null)) :
                 new ArrayList<>();
-        this._searchMarker = new ArrayList<>();
+        this._searchMarker = new SearchMarkers();
         this._hasFormatting = false;
     }
 
@@ -298,6 +299,23 @@ public class YText extends AbstractType<YTextEvent> {
         }
     }
 
+    /**
+     * 把多段文本追加到末尾. 各段先拼接起来, 作为一个ContentString项插入,
+     * 跨段的代理对不会被拆开
+     *
+     * @param chunks 文本片段, 忽略null
+     */
+    public void appendChunks(Stream<String> chunks) {
+        String text = chunks.filter(Objects::nonNull).collect(Collectors.joining());
+        if (text.isEmpty()) return;
+
+        if (this.doc != null) {
+            this.insert(this._length, text);
+        } else {
+            this._pending.add(() -> this.insert(this._length, text));
+        }
+    }
+
     public void insertEmbed(int index, Object embed, Map<String, Object> attributes) {
         Doc y = this.doc;
         if (y != null) {
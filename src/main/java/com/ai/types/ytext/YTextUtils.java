@@ -5,8 +5,8 @@ import com.ai.structs.item.AbstractContent;
 import com.ai.structs.item.Item;
 import com.ai.types.ID;
 import com.ai.types.arraytype.AbstractType;
-import com.ai.types.arraytype.ArraySearchMarker;
 import com.ai.utils.DeleteSet;
+import com.ai.utils.StateVector;
 import com.ai.utils.Doc;
 import com.ai.utils.structstore.StructStore;
 import com.ai.utils.Transaction;
@@ -48,7 +48,7 @@ public class YTextUtils {
         int index = currPos.index;
 
         if (parent._searchMarker != null) {
-            ArraySearchMarker.updateMarkerChanges(parent._searchMarker, currPos.index, content.getLength());
+            parent._searchMarker.updateChanges(currPos.index, content.getLength());
         }
 
         // 创建并插入新项目
@@ -246,14 +246,11 @@ public class YTextUtils {
         Doc doc = transaction.doc;
 
         // 检查是否有新插入的格式项
-        for (Map.Entry<Integer, Integer> entry : transaction.afterState.entrySet()) {
-            int client = entry.getKey();
-            int afterClock = entry.getValue();
-            int clock = transaction.beforeState.getOrDefault(client, 0);
-
-            if (afterClock == clock) {
-                continue;
-            }
+        StateVector changedState = transaction.afterState.diff(transaction.beforeState);
+        for (int i = 0; i < changedState.size(); i++) {
+            int client = changedState.clientAt(i);
+            int afterClock = changedState.clockAt(i);
+            int clock = transaction.beforeState.clock(client);
 
             List<AbstractStruct> clientStructs = doc.store.clients.get(client);
             StructStore.iterateStructs(transaction, clientStructs, clock, afterClock, item -> {
@@ -270,7 +267,7 @@ public class YTextUtils {
             // 遍历已删除的结构
             DeleteSet.iterateDeletedStructs(transaction, transaction.deleteSet, item -> {
                 // 检查是否需要跳过当前项
-                if (item instanceof GC ||
+                if (item instanceof GC || !(((Item) item).parent instanceof YText) ||
                         !((YText) ((Item)item).parent)._hasFormatting ||
                         needFullCleanup.contains((YText) ((Item) item).parent)) {
                     return;
@@ -322,7 +319,7 @@ public class YTextUtils {
 
         AbstractType parent = (AbstractType) (currPos.left != null ? currPos.left : currPos.right).parent;
         if (parent._searchMarker != null) {
-            ArraySearchMarker.updateMarkerChanges(parent._searchMarker, currPos.index, -startLength + length);
+            parent._searchMarker.updateChanges(currPos.index, -startLength + length);
         }
 
         return currPos;
@@ -1,7 +1,11 @@
 package com.ai.utils;
 
+import com.ai.myutils.SerialExecutor;
 import com.ai.myutils.observable.BinaryConsumer;
+import com.ai.myutils.observable.Channel;
 import com.ai.myutils.observable.ObservableV2;
+import com.ai.myutils.observable.QuadConsumer;
+import com.ai.myutils.observable.TriConsumer;
 import com.ai.structs.ContentDoc;
 import com.ai.structs.item.Item;
 import com.ai.types.YArray;
@@ -9,13 +13,17 @@ import com.ai.types.YMap;
 import com.ai.types.YXmlElement;
 import com.ai.types.YXmlFragment;
 import com.ai.types.arraytype.AbstractType;
+import com.ai.types.vo.SubdocsEvent;
 import com.ai.types.ytext.YText;
 import com.ai.utils.structstore.StructStore;
 import lombok.Getter;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -38,12 +46,34 @@ public class Doc extends ObservableV2 {
     public Item _item;
     public boolean shouldLoad;
     public boolean autoLoad;
+    public boolean deriveUpdateV1FromV2;
+    /**
+     * 见DocOptions.listIndex, 类型集成时据此建立ListIndex
+     */
+    public final boolean listIndex;
+    /**
+     * DocOptions.observerExecutor的顺序执行包装, null时同步调用观察者
+     */
+    final Executor observerExecutor;
     public Object meta;
     public boolean isLoaded;
     public boolean isSynced;
     private boolean isDestroyed;
     public CompletableFuture<Doc> whenLoaded;
     public CompletableFuture<Void> whenSynced;
+    /*
+     * 事务事件的Channel, 与on(name)/emit(name)是同一组监听器.
+     * 在这里预先取得, 事务中emit时不必查表, 也可以先判断有没有监听器再计算事件参数
+     */
+    public final Channel<Consumer<Doc>> beforeAllTransactionsListeners = channel("beforeAllTransactions");
+    public final Channel<BinaryConsumer<Transaction, Doc>> beforeTransactionListeners = channel("beforeTransaction");
+    public final Channel<BinaryConsumer<Transaction, Doc>> beforeObserverCallsListeners = channel("beforeObserverCalls");
+    public final Channel<Consumer<Transaction>> afterTransactionListeners = channel("afterTransaction");
+    public final Channel<BinaryConsumer<Transaction, Doc>> afterTransactionCleanupListeners = channel("afterTransactionCleanup");
+    public final Channel<QuadConsumer<int[], Object, Doc, Transaction>> updateListeners = channel("update");
+    public final Channel<QuadConsumer<int[], Object, Doc, Transaction>> updateV2Listeners = channel("updateV2");
+    public final Channel<TriConsumer<SubdocsEvent, Doc, Transaction>> subdocsListeners = channel("subdocs");
+    public final Channel<BinaryConsumer<Doc, List<Transaction>>> afterAllTransactionsListeners = channel("afterAllTransactions");
 
 
     public Doc() {
@@ -63,6 +93,9 @@ public class Doc extends ObservableV2 {
         this.subdocs = new LinkedHashSet<>();
         this.shouldLoad = opts.shouldLoad;
         this.autoLoad = opts.autoLoad;
+        this.deriveUpdateV1FromV2 = opts.deriveUpdateV1FromV2;
+        this.listIndex = opts.listIndex;
+        this.observerExecutor = opts.observerExecutor == null ? null : new SerialExecutor(opts.observerExecutor);
         this.meta = opts.meta;
         this.isLoaded = false;
         this.isSynced = false;
@@ -87,6 +120,37 @@ public class Doc extends ObservableV2 {
         });
     }
 
+    /**
+     * 调用类型的观察者. 异步模式(DocOptions.observerExecutor)下复制当前的监听器列表和事件快照, 交给执行器.
+     * 监听器只能读取快照中预先计算的内容, 见{@link YEvent#snapshot}
+     */
+    public void callObservers(EventHandler<YEvent, Transaction> eventHandler, YEvent<?> event, Transaction transaction) {
+        if (observerExecutor == null) {
+            EventHandler.callEventHandlerListeners(eventHandler, event, transaction);
+        } else if (!eventHandler.l.isEmpty()) {
+            List<BiConsumer<YEvent, Transaction>> listeners = new ArrayList<>(eventHandler.l);
+            YEvent<?> snapshot = event.snapshot();
+            observerExecutor.execute(() -> listeners.forEach(listener -> listener.accept(snapshot, transaction)));
+        }
+    }
+
+    /**
+     * 调用深度观察者, 异步模式同{@link #callObservers}, 每个事件的快照是相对于当前currentTarget的
+     */
+    public void callDeepObservers(EventHandler<List<YEvent<?>>, Transaction> eventHandler, List<YEvent<?>> events, Transaction transaction) {
+        if (observerExecutor == null) {
+            EventHandler.callEventHandlerListeners(eventHandler, events, transaction);
+        } else if (!eventHandler.l.isEmpty()) {
+            List<BiConsumer<List<YEvent<?>>, Transaction>> listeners = new ArrayList<>(eventHandler.l);
+            List<YEvent<?>> snapshots = new ArrayList<>(events.size());
+            for (YEvent<?> event : events) {
+                snapshots.add(event.snapshot());
+            }
+            List<YEvent<?>> readOnly = Collections.unmodifiableList(snapshots);
+            observerExecutor.execute(() -> listeners.forEach(listener -> listener.accept(readOnly, transaction)));
+        }
+    }
+
     static int generateNewClientId() {
         return new Random().nextInt(Integer.MAX_VALUE);
     }
@@ -6,6 +6,7 @@ import lombok.experimental.Accessors;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.function.Predicate;
 
 @Data
@@ -34,6 +35,29 @@ public class DocOptions {
     @Builder.Default
     public boolean shouldLoad = true;
 
+    /**
+     * 同时监听"update"和"updateV2"时, V1更新从V2更新转换得到, 每个事务只编码一次
+     */
+    @Builder.Default
+    public boolean deriveUpdateV1FromV2 = false;
+
+    /**
+     * 不为null时, 类型观察者(observe/observeDeep)和"update"/"updateV2"监听器不在事务中调用,
+     * 而是按事务顺序交给这个Executor逐个执行, 收到的是事件快照(见YEvent.snapshot).
+     * 其他Doc事件仍在事务中同步调用. 监听器和之后的事务可能同时运行, 不能在其中读写文档:
+     * 只能使用快照中预先计算的changes/keys/delta/path和update的字节, event.target/currentTarget和transaction
+     * 仍指向文档中正在被修改的对象, 只能作为标识使用
+     */
+    @ToString.Exclude
+    public Executor observerExecutor;
+
+    /**
+     * 为列表类型(YArray/YText/YXml)维护顺序统计树(ListIndex), 按索引定位为O(log n), 不再使用搜索标记.
+     * 每个列表项多一个树节点, 适合在大文档中分散编辑
+     */
+    @Builder.Default
+    public boolean listIndex = false;
+
     // 保留这个构造函数以便兼容旧代码
     public DocOptions(String guid, boolean shouldLoad, Map<String, Object> opts) {
         this.guid = guid;
@@ -11,6 +11,8 @@ import com.ai.structs.Skip;
 import com.ai.structs.item.Item;
 import com.ai.types.ID;
 import com.ai.types.vo.StructRefs;
+import com.ai.utils.codec.CodecFactory;
+import com.ai.utils.codec.UpdateFormat;
 import com.ai.utils.codec.decoder.UpdateDecoder;
 import com.ai.utils.codec.decoder.UpdateDecoderV1;
 import com.ai.utils.codec.decoder.UpdateDecoderV2;
@@ -22,6 +24,7 @@ import com.ai.utils.structstore.Structs;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.ObjectUtils;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -57,33 +60,18 @@ public class Encoding {
      * Writes client structs to the encoder
      */
     public static void writeClientsStructs(UpdateEncoder encoder, StructStore store, Map<Integer, Integer> _sm) {
-        // we filter all valid sm entries into filteredSm
-        Map<Integer, Integer> sm = new HashMap<>();
-        _sm.forEach((client, clock) -> {
-            // only write if new structs are available
-            if (StructStore.getState(store, client) > clock) {
-                sm.put(client, clock);
-            }
-        });
-
-        StructStore.getStateVector(store).forEach((client, clock) -> {
-            if (!_sm.containsKey(client)) {
-                sm.put(client, 0);
-            }
-        });
+        StateVector targetState = StateVector.of(_sm);
+        // only write clients with new structs, starting at the clock the target knows (0 if unknown)
+        StateVector sm = StructStore.getStateVector(store).diff(targetState);
 
         // write # states that were updated
         encoding.writeVarUint(encoder.restEncoder, sm.size());
 
         // Write items with higher client ids first
         // This heavily improves the conflict algorithm.
-        List<Map.Entry<Integer, Integer>> toSort = new ArrayList<>(sm.entrySet());
-        toSort.sort((a, b) -> b.getKey() - a.getKey());
-        for (int i = 0; i < toSort.size(); i++) {
-            Map.Entry<Integer, Integer> entry = toSort.get(i);
-            int client = entry.getKey();
-            int clock = entry.getValue();
-            writeStructs(encoder, store.clients.get(client), client, clock);
+        for (int i = sm.size() - 1; i >= 0; i--) {
+            int client = sm.clientAt(i);
+            writeStructs(encoder, store.clients.get(client), client, targetState.clock(client));
         }
     }
 
@@ -140,9 +128,7 @@ public class Encoding {
         return clientRefs;
     }
 
-    private static final Map<Integer, Integer> missingSV = new HashMap<>();
-
-    private static void updateMissingSv(int client, int clock) {
+    private static void updateMissingSv(Map<Integer, Integer> missingSV, int client, int clock) {
         Integer mclock = missingSV.get(client);
         if (mclock == null || mclock > clock) {
             missingSV.put(client, clock);
@@ -228,7 +214,7 @@ public class Encoding {
                 if (offset < 0) {
                     // update from the same client is missing
                     stack.add(stackHead);
-                    updateMissingSv(stackHead.id.client, stackHead.id.clock - 1);
+                    updateMissingSv(missingSV, stackHead.id.client, stackHead.id.clock - 1);
                     addStackToRestSS(stack, clientsStructRefs, restStructs, clientsStructRefsIds);
                 } else {
                     Integer missing = stackHead.getMissing(transaction, store);
@@ -239,7 +225,7 @@ public class Encoding {
 
                         if (structRefs.refs.length == structRefs.i) {
                             // This update message causally depends on another update message
-                            updateMissingSv(missing, StructStore.getState(store, missing));
+                            updateMissingSv(missingSV, missing, StructStore.getState(store, missing));
                             addStackToRestSS(stack, clientsStructRefs, restStructs, clientsStructRefsIds);
                         } else {
                             stackHead = structRefs.refs[structRefs.i++];
@@ -373,14 +359,34 @@ public class Encoding {
     }
 
     public static void applyUpdateV2(Doc ydoc, int[] update) {
-        applyUpdateV2(ydoc, update, null, UpdateDecoderV2.class);
+        applyUpdateV2(ydoc, Uint8Array.toByteArray(update));
+    }
+
+    public static void applyUpdateV2(Doc ydoc, byte[] update) {
+        applyUpdateV2(ydoc, update, null, UpdateFormat.V2);
     }
 
     public static void applyUpdateV2(Doc ydoc, int[] update, Object transactionOrigin) {
+        applyUpdateV2(ydoc, Uint8Array.toByteArray(update), transactionOrigin);
+    }
+
+    public static void applyUpdateV2(Doc ydoc, byte[] update, Object transactionOrigin) {
         Decoder decoder = decoding.createDecoder(update);
         readUpdateV2(decoder, ydoc, transactionOrigin, new UpdateDecoderV2(decoder));
     }
 
+    public static void applyUpdateV2(Doc ydoc, int[] update, Object transactionOrigin, CodecFactory YDecoder) {
+        applyUpdateV2(ydoc, Uint8Array.toByteArray(update), transactionOrigin, YDecoder);
+    }
+
+    /**
+     * @deprecated use {@link #applyUpdateV2(Doc, int[], Object, CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
+    public static void applyUpdateV2(Doc ydoc, int[] update, Object transactionOrigin, Class<? extends UpdateDecoder> YDecoder) {
+        applyUpdateV2(ydoc, update, transactionOrigin, YDecoder == null ? null : UpdateFormat.of(YDecoder));
+    }
+
     /**
      * 应用文档更新（例如通过y.on('update', update => ..)或encodeStateAsUpdate()创建的更新）
      * 此方法与readUpdate效果相同，但接受Uint8Array而不是解码器
@@ -388,32 +394,53 @@ public class Encoding {
      * @param ydoc              Y文档
      * @param update            更新数据
      * @param transactionOrigin 事务来源
-     * @param YDecoder          解码器类(默认为UpdateDecoderV2)
+     * @param YDecoder          解码格式(默认为UpdateFormat.V2)
      */
-    public static void applyUpdateV2(Doc ydoc, int[] update, Object transactionOrigin, Class<? extends UpdateDecoder> YDecoder) {
-        YDecoder = ObjectUtils.getIfNull(YDecoder, UpdateDecoderV2.class);
+    public static void applyUpdateV2(Doc ydoc, byte[] update, Object transactionOrigin, CodecFactory YDecoder) {
+        applyUpdateV2(ydoc, ByteBuffer.wrap(update), transactionOrigin, YDecoder);
+    }
+
+    /**
+     * 同applyUpdateV2, 直接从ByteBuffer(堆内, direct或MappedByteBuffer)中读取更新, 不会复制到堆内
+     * 读取的是buffer的position到limit之间的数据, buffer的position不会被修改
+     */
+    public static void applyUpdateV2(Doc ydoc, ByteBuffer update, Object transactionOrigin, CodecFactory YDecoder) {
+        YDecoder = ObjectUtils.getIfNull(YDecoder, UpdateFormat.V2);
         Decoder decoder = decoding.createDecoder(update);
-        UpdateDecoder updateDecoder;
-        try {
-            updateDecoder = YDecoder.getConstructor(Decoder.class).newInstance(decoder);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create decoder", e);
-        }
+        readUpdateV2(decoder, ydoc, transactionOrigin, YDecoder.newDecoder(decoder));
+    }
 
-        // 保存原始状态
-        String before = ydoc.getText("textBlock").toString();
+    /**
+     * 应用文档更新（简化版本，使用默认的UpdateDecoderV1）
+     */
+    public static void applyUpdate(Doc ydoc, int[] update, Object transactionOrigin) {
+        applyUpdateV2(ydoc, update, transactionOrigin, UpdateFormat.V1);
+    }
 
-        readUpdateV2(decoder, ydoc, transactionOrigin, updateDecoder);
+    public static void applyUpdate(Doc ydoc, byte[] update, Object transactionOrigin) {
+        applyUpdateV2(ydoc, update, transactionOrigin, UpdateFormat.V1);
+    }
 
-        // 打印应用后的状态
-        String after = ydoc.getText("textBlock").toString();
+    public static void applyUpdate(Doc ydoc, ByteBuffer update, Object transactionOrigin) {
+        applyUpdateV2(ydoc, update, transactionOrigin, UpdateFormat.V1);
     }
 
     /**
-     * 应用文档更新（简化版本，使用默认的UpdateDecoderV1）
+     * 批量应用多个更新: 先合并(mergeUpdates)再在同一个事务中应用,
+     * 只执行一次cleanup, observer和update事件也只触发一次
+     *
+     * @param ydoc              Y文档
+     * @param updates           更新列表, 顺序不限
+     * @param transactionOrigin 事务来源
+     * @param YDecoder          更新的格式(默认为UpdateFormat.V2)
      */
-    public static void applyUpdate(Doc ydoc, int[] update, Object transactionOrigin) {
-        applyUpdateV2(ydoc, update, transactionOrigin, UpdateDecoderV1.class);
+    public static void applyUpdates(Doc ydoc, List<byte[]> updates, Object transactionOrigin, CodecFactory YDecoder) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        YDecoder = ObjectUtils.getIfNull(YDecoder, UpdateFormat.V2);
+        byte[] merged = Updates.mergeUpdatesV2Bytes(updates, YDecoder, YDecoder);
+        applyUpdateV2(ydoc, merged, transactionOrigin, YDecoder);
     }
 
     /**
@@ -425,9 +452,8 @@ public class Encoding {
      * @param targetStateVector 目标客户端状态，留空则写入所有已知结构
      */
     public static void writeStateAsUpdate(UpdateEncoder encoder, Doc doc, Map<Integer, Integer> targetStateVector) {
-        targetStateVector = ObjectUtils.getIfNull(targetStateVector, new HashMap<>());
+        targetStateVector = ObjectUtils.getIfNull(targetStateVector, StateVector.EMPTY);
         writeClientsStructs(encoder, doc.store, targetStateVector);
-        Uint8Array.printUint8Array(encoder.toUint8Array());
         DeleteSet.writeDeleteSet(encoder, DeleteSet.createDeleteSetFromStructStore(doc.store));
     }
 
@@ -441,30 +467,37 @@ public class Encoding {
      * @return 编码后的更新数据
      */
     public static int[] encodeStateAsUpdateV2(Doc doc, int[] encodedTargetStateVector, UpdateEncoder encoder) {
-        encodedTargetStateVector = ObjectUtils.getIfNull(encodedTargetStateVector, new int[]{0});
+        return Uint8Array.toIntArray(encodeStateAsUpdateV2Bytes(doc, Uint8Array.toByteArray(encodedTargetStateVector), encoder));
+    }
+
+    /**
+     * 同encodeStateAsUpdateV2, 但直接使用byte[]作为输入和输出
+     */
+    public static byte[] encodeStateAsUpdateV2Bytes(Doc doc, byte[] encodedTargetStateVector, UpdateEncoder encoder) {
+        encodedTargetStateVector = ObjectUtils.getIfNull(encodedTargetStateVector, new byte[]{0});
         encoder = ObjectUtils.getIfNull(encoder, new UpdateEncoderV2<>());
 
-        Map<Integer, Integer> targetStateVector = decodeStateVector(encodedTargetStateVector);
+        StateVector targetStateVector = decodeStateVector(encodedTargetStateVector);
         writeStateAsUpdate(encoder, doc, targetStateVector);
 
-        List<int[]> updates = new ArrayList<>();
-        updates.add(encoder.toUint8Array());
+        List<byte[]> updates = new ArrayList<>();
+        updates.add(encoder.toByteArray());
 
         // 同时添加待处理的更新(如果有的话)
         if (doc.store.pendingDs != null) {
-            updates.add(doc.store.pendingDs);
+            updates.add(Uint8Array.toByteArray(doc.store.pendingDs));
         }
         if (doc.store.pendingStructs != null) {
-            updates.add(Updates.diffUpdateV2(doc.store.pendingStructs.update, encodedTargetStateVector));
+            updates.add(Updates.diffUpdateV2(Uint8Array.toByteArray(doc.store.pendingStructs.update), encodedTargetStateVector));
         }
 
         if (updates.size() > 1) {
             if (encoder instanceof UpdateEncoderV1) {
-                return mergeUpdates(updates.stream()
+                return mergeUpdatesBytes(updates.stream()
                         .map(update -> update == updates.get(0) ? update : convertUpdateFormatV2ToV1(update))
                         .collect(Collectors.toList()));
             } else if (encoder instanceof UpdateEncoderV2) {
-                return mergeUpdatesV2(updates);
+                return mergeUpdatesV2Bytes(updates);
             }
         }
         return updates.get(0);
@@ -477,30 +510,38 @@ public class Encoding {
         return encodeStateAsUpdateV2(doc, encodedTargetStateVector, new UpdateEncoderV1());
     }
 
+    public static byte[] encodeStateAsUpdateBytes(Doc doc, byte[] encodedTargetStateVector) {
+        return encodeStateAsUpdateV2Bytes(doc, encodedTargetStateVector, new UpdateEncoderV1());
+    }
+
     /**
-     * 从解码器读取状态向量并返回为Map
+     * 从解码器读取状态向量
      *
      * @param decoder 解码器
      * @return 映射客户端ID到该客户端下一个期望的时钟值
      */
-    public static Map<Integer, Integer> readStateVector(UpdateDecoder decoder) {
-        Map<Integer, Integer> ss = new HashMap<>();
+    public static StateVector readStateVector(UpdateDecoder decoder) {
         int ssLength = decoding.readVarUint(decoder.restDecoder);
+        StateVector.Builder ss = new StateVector.Builder(ssLength);
         for (int i = 0; i < ssLength; i++) {
             int client = decoding.readVarUint(decoder.restDecoder);
             int clock = decoding.readVarUint(decoder.restDecoder);
             ss.put(client, clock);
         }
-        return ss;
+        return ss.build();
     }
 
     /**
-     * 解码状态向量并返回状态Map
+     * 解码状态向量
      *
      * @param decodedState 已解码的状态数据
      * @return 映射客户端ID到该客户端下一个期望的时钟值
      */
-    public static Map<Integer, Integer> decodeStateVector(int[] decodedState) {
+    public static StateVector decodeStateVector(int[] decodedState) {
+        return readStateVector(new UpdateDecoderV1(decoding.createDecoder(decodedState)));
+    }
+
+    public static StateVector decodeStateVector(byte[] decodedState) {
         return readStateVector(new UpdateDecoderV1(decoding.createDecoder(decodedState)));
     }
 
@@ -508,16 +549,19 @@ public class Encoding {
      * 将状态向量写入编码器
      *
      * @param encoder 编码器
-     * @param sv      状态向量Map
+     * @param sv      状态向量, Map形式会先转换为StateVector
      */
     public static void writeStateVector(UpdateEncoder encoder, Map<Integer, Integer> sv) {
+        writeStateVector(encoder, StateVector.of(sv));
+    }
+
+    public static void writeStateVector(UpdateEncoder encoder, StateVector sv) {
         encoding.writeVarUint(encoder.restEncoder, sv.size());
-        sv.entrySet().stream()
-                .sorted((a, b) -> b.getKey() - a.getKey())
-                .forEach(entry -> {
-                    encoding.writeVarUint(encoder.restEncoder, entry.getKey());
-                    encoding.writeVarUint(encoder.restEncoder, entry.getValue());
-                });
+        // 按客户端ID降序写入
+        for (int i = sv.size() - 1; i >= 0; i--) {
+            encoding.writeVarUint(encoder.restEncoder, sv.clientAt(i));
+            encoding.writeVarUint(encoder.restEncoder, sv.clockAt(i));
+        }
     }
 
     /**
@@ -538,6 +582,10 @@ public class Encoding {
      * @return 编码后的状态数据
      */
     public static int[] encodeStateVectorV2(Object doc, UpdateEncoder encoder) {
+        return Uint8Array.toIntArray(encodeStateVectorV2Bytes(doc, encoder));
+    }
+
+    public static byte[] encodeStateVectorV2Bytes(Object doc, UpdateEncoder encoder) {
         if (encoder == null) {
             encoder = new UpdateEncoderV2<>();
         }
@@ -547,7 +595,7 @@ public class Encoding {
         } else if (doc instanceof Doc) {
             writeDocumentStateVector(encoder, (Doc) doc);
         }
-        return encoder.toUint8Array();
+        return encoder.toByteArray();
     }
 
     /**
@@ -557,4 +605,8 @@ public class Encoding {
         return encodeStateVectorV2(doc, new UpdateEncoderV1());
     }
 
+    public static byte[] encodeStateVectorBytes(Object doc) {
+        return encodeStateVectorV2Bytes(doc, new UpdateEncoderV1());
+    }
+
 }
\ No newline at end of file
@@ -6,14 +6,14 @@ import com.ai.myutils.encoder.encoding;
 import com.ai.structs.AbstractStruct;
 import com.ai.structs.item.Item;
 import com.ai.types.vo.LazyStructReader;
+import com.ai.utils.codec.CodecFactory;
+import com.ai.utils.codec.UpdateFormat;
 import com.ai.utils.codec.decoder.UpdateDecoder;
 import com.ai.utils.codec.decoder.UpdateDecoderV1;
-import com.ai.utils.codec.decoder.UpdateDecoderV2;
 import com.ai.utils.codec.encoder.UpdateEncoder;
 import com.ai.utils.codec.encoder.UpdateEncoderV1;
 import com.ai.utils.codec.encoder.UpdateEncoderV2;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 
 import static com.ai.types.ID.createID;
@@ -77,7 +77,7 @@ public class Snapshot {
     }
 
     public static Snapshot decodeSnapshotV2(int[] buf, UpdateDecoder decoder) {
-        return new Snapshot(readDeleteSet(decoder), readStateVector(decoder));
+        return new Snapshot(readDeleteSet(decoder), readStateVector(decoder).toMap());
     }
 
     public static Snapshot decodeSnapshot(int[] buf) {
@@ -91,7 +91,8 @@ public class Snapshot {
     public static final Snapshot emptySnapshot = createSnapshot(createDeleteSet(), new HashMap<>());
 
     public static Snapshot snapshot(Doc doc) {
-        return createSnapshot(createDeleteSetFromStructStore(doc.store), getStateVector(doc.store));
+        // 快照的sv可被修改, 使用可变的Map副本
+        return createSnapshot(createDeleteSetFromStructStore(doc.store), getStateVector(doc.store).toMap());
     }
 
     public static boolean isVisible(Item item, Snapshot snapshot) {
@@ -158,17 +159,20 @@ public class Snapshot {
     }
 
     public static boolean snapshotContainsUpdateV2(Snapshot snapshot, int[] update) {
-        return snapshotContainsUpdateV2(snapshot, update, UpdateDecoderV2.class);
+        return snapshotContainsUpdateV2(snapshot, update, UpdateFormat.V2);
     }
 
+    /**
+     * @deprecated use {@link #snapshotContainsUpdateV2(Snapshot, int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static boolean snapshotContainsUpdateV2(Snapshot snapshot, int[] update, Class<?> YDecoder) {
+        return snapshotContainsUpdateV2(snapshot, update, YDecoder == null ? null : UpdateFormat.of(YDecoder));
+    }
+
+    public static boolean snapshotContainsUpdateV2(Snapshot snapshot, int[] update, CodecFactory YDecoder) {
         List<Item> structs = new ArrayList<>();
-        UpdateDecoder updateDecoder = null;
-        try {
-            updateDecoder = (UpdateDecoder) YDecoder.getConstructor(Decoder.class).newInstance(decoding.createDecoder(update));
-        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException | InvocationTargetException e) {
-            throw new RuntimeException(e);
-        }
+        UpdateDecoder updateDecoder = YDecoder.newDecoder(decoding.createDecoder(update));
         LazyStructReader lazyDecoder = new LazyStructReader(updateDecoder, false);
 
         for (Item curr = (Item) lazyDecoder.curr; curr != null; curr = (Item) lazyDecoder.next()) {
@@ -183,6 +187,6 @@ public class Snapshot {
     }
 
     public static boolean snapshotContainsUpdate(Snapshot snapshot, int[] update) {
-        return snapshotContainsUpdateV2(snapshot, update, UpdateDecoderV1.class);
+        return snapshotContainsUpdateV2(snapshot, update, UpdateFormat.V1);
     }
 }
\ No newline at end of file
@@ -0,0 +1,299 @@
+package com.ai.utils;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable state vector: client id -> next expected clock of that client.
+ * <p>
+ * Backed by two int arrays sorted by client, lookups are binary searches and compare/diff/merge
+ * walk both vectors once, nothing is boxed. It is also a read-only {@code Map<Integer, Integer>},
+ * so it can be passed where the Map form is expected. {@link #of(Map)} and {@link #toMap()} convert between both forms.
+ */
+public final class StateVector extends AbstractMap<Integer, Integer> {
+    public static final StateVector EMPTY = new StateVector(new int[0], new int[0]);
+
+    private final int[] clients;
+    private final int[] clocks;
+
+    private StateVector(int[] clients, int[] clocks) {
+        this.clients = clients;
+        this.clocks = clocks;
+    }
+
+    /**
+     * The state vector of a map, the map itself if it already is one.
+     */
+    public static StateVector of(Map<Integer, Integer> sv) {
+        if (sv instanceof StateVector) {
+            return (StateVector) sv;
+        }
+        Builder builder = new Builder(sv.size());
+        sv.forEach(builder::put);
+        return builder.build();
+    }
+
+    /**
+     * Collects client/clock pairs in any order. If a client is put twice, the last clock wins.
+     */
+    public static final class Builder {
+        private int[] clients;
+        private int[] clocks;
+        private int size;
+
+        public Builder() {
+            this(8);
+        }
+
+        public Builder(int capacity) {
+            this.clients = new int[Math.max(capacity, 1)];
+            this.clocks = new int[Math.max(capacity, 1)];
+        }
+
+        public Builder put(int client, int clock) {
+            if (size == clients.length) {
+                clients = Arrays.copyOf(clients, size * 2);
+                clocks = Arrays.copyOf(clocks, size * 2);
+            }
+            clients[size] = client;
+            clocks[size] = clock;
+            size++;
+            return this;
+        }
+
+        public StateVector build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            // sort by client, then by insertion order, so the last put of a client comes last
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) clients[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedClients = new int[size];
+            int[] sortedClocks = new int[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                int index = (int) order[i];
+                int client = clients[index];
+                if (n > 0 && sortedClients[n - 1] == client) {
+                    n--;
+                }
+                sortedClients[n] = client;
+                sortedClocks[n] = clocks[index];
+                n++;
+            }
+            return n == size
+                    ? new StateVector(sortedClients, sortedClocks)
+                    : new StateVector(Arrays.copyOf(sortedClients, n), Arrays.copyOf(sortedClocks, n));
+        }
+    }
+
+    @Override
+    public int size() {
+        return clients.length;
+    }
+
+    /**
+     * Client of the i-th entry, entries are sorted by client.
+     */
+    public int clientAt(int i) {
+        return clients[i];
+    }
+
+    /**
+     * Clock of the i-th entry.
+     */
+    public int clockAt(int i) {
+        return clocks[i];
+    }
+
+    private int indexOf(int client) {
+        return Arrays.binarySearch(clients, client);
+    }
+
+    /**
+     * The clock of client, 0 if the client is unknown.
+     */
+    public int clock(int client) {
+        int i = indexOf(client);
+        return i < 0 ? 0 : clocks[i];
+    }
+
+    public int getOrDefault(int client, int defaultClock) {
+        int i = indexOf(client);
+        return i < 0 ? defaultClock : clocks[i];
+    }
+
+    public boolean containsKey(int client) {
+        return indexOf(client) >= 0;
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int i = indexOf((Integer) key);
+        return i < 0 ? null : clocks[i];
+    }
+
+    @Override
+    public Integer getOrDefault(Object key, Integer defaultValue) {
+        Integer clock = get(key);
+        return clock == null ? defaultValue : clock;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey((int) (Integer) key);
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Integer, ? super Integer> action) {
+        for (int i = 0; i < clients.length; i++) {
+            action.accept(clients[i], clocks[i]);
+        }
+    }
+
+    /**
+     * Whether this vector knows at least everything other knows.
+     */
+    public boolean covers(StateVector other) {
+        int i = 0;
+        for (int j = 0; j < other.clients.length; j++) {
+            int client = other.clients[j];
+            while (i < clients.length && clients[i] < client) {
+                i++;
+            }
+            int clock = i < clients.length && clients[i] == client ? clocks[i] : 0;
+            if (clock < other.clocks[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The entries of this vector that are ahead of base.
+     */
+    public StateVector diff(StateVector base) {
+        int[] diffClients = new int[clients.length];
+        int[] diffClocks = new int[clients.length];
+        int n = 0;
+        int j = 0;
+        for (int i = 0; i < clients.length; i++) {
+            int client = clients[i];
+            while (j < base.clients.length && base.clients[j] < client) {
+                j++;
+            }
+            int baseClock = j < base.clients.length && base.clients[j] == client ? base.clocks[j] : 0;
+            if (clocks[i] > baseClock) {
+                diffClients[n] = client;
+                diffClocks[n] = clocks[i];
+                n++;
+            }
+        }
+        if (n == clients.length) {
+            return this;
+        }
+        return n == 0 ? EMPTY : new StateVector(Arrays.copyOf(diffClients, n), Arrays.copyOf(diffClocks, n));
+    }
+
+    /**
+     * The union of both vectors, the higher clock of a client wins.
+     */
+    public StateVector merge(StateVector other) {
+        if (other.clients.length == 0 || this == other) {
+            return this;
+        }
+        if (clients.length == 0) {
+            return other;
+        }
+        int[] mergedClients = new int[clients.length + other.clients.length];
+        int[] mergedClocks = new int[mergedClients.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < clients.length || j < other.clients.length) {
+            if (j == other.clients.length || (i < clients.length && clients[i] < other.clients[j])) {
+                mergedClients[n] = clients[i];
+                mergedClocks[n++] = clocks[i++];
+            } else if (i == clients.length || other.clients[j] < clients[i]) {
+                mergedClients[n] = other.clients[j];
+                mergedClocks[n++] = other.clocks[j++];
+            } else {
+                mergedClients[n] = clients[i];
+                mergedClocks[n++] = Math.max(clocks[i++], other.clocks[j++]);
+            }
+        }
+        return new StateVector(Arrays.copyOf(mergedClients, n), Arrays.copyOf(mergedClocks, n));
+    }
+
+    /**
+     * A mutable copy.
+     */
+    public Map<Integer, Integer> toMap() {
+        Map<Integer, Integer> map = new HashMap<>();
+        forEach(map::put);
+        return map;
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new Iterator<Entry<Integer, Integer>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < clients.length;
+                    }
+
+                    @Override
+                    public Entry<Integer, Integer> next() {
+                        if (next >= clients.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(clients[i], clocks[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return clients.length;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof StateVector) {
+            StateVector other = (StateVector) o;
+            return Arrays.equals(clients, other.clients) && Arrays.equals(clocks, other.clocks);
+        }
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        // same as Map.hashCode: sum of key.hashCode() ^ value.hashCode()
+        int h = 0;
+        for (int i = 0; i < clients.length; i++) {
+            h += clients[i] ^ clocks[i];
+        }
+        return h;
+    }
+}
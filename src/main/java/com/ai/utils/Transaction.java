@@ -1,5 +1,9 @@
 package com.ai.utils;
 
+import com.ai.myutils.encoder.BufferPool;
+import com.ai.myutils.encoder.encoding;
+import com.ai.myutils.observable.Channel;
+import com.ai.myutils.observable.QuadConsumer;
 import com.ai.structs.AbstractStruct;
 import com.ai.structs.item.Item;
 import com.ai.types.ID;
@@ -9,6 +13,7 @@ import com.ai.types.ytext.YTextUtils;
 import com.ai.utils.codec.encoder.UpdateEncoder;
 import com.ai.utils.codec.encoder.UpdateEncoderV1;
 import com.ai.utils.codec.encoder.UpdateEncoderV2;
+import com.ai.utils.structstore.ClientClockMap;
 import com.ai.utils.structstore.StructStore;
 
 import java.util.*;
@@ -18,11 +23,16 @@ import java.util.stream.Collectors;
 public class Transaction {
     public final Doc doc;
     public final DeleteSet deleteSet;
-    public final Map<Integer, Integer> beforeState;
-    public Map<Integer, Integer> afterState;
+    public final StateVector beforeState;
+    public StateVector afterState;
     public final Map<AbstractType<?>, Set<String>> changed;
     public final Map<AbstractType<?>, List<YEvent<?>>> changedParentTypes;
     public final List<AbstractStruct> mergeStructs;
+    /**
+     * client -> clock of the first struct this transaction added for the client, recorded when integrating.
+     * The cleanup only merges these ranges instead of comparing the whole state vectors.
+     */
+    public final ClientClockMap addedStructs;
     public final Object origin;
     public final Map<Object, Object> meta;
     public boolean local;
@@ -30,19 +40,28 @@ public class Transaction {
     public final Set<Doc> subdocsRemoved;
     public final Set<Doc> subdocsLoaded;
     public boolean needFormattingCleanup;
+    /**
+     * 事件路径的缓存, 由YEvent.getPath按需创建
+     */
+    Map<AbstractType<?>, YEvent.PathNode> pathNodes;
+    /**
+     * 清理阶段编码的更新, 由getUpdate/getUpdateV2按需生成一次并共享
+     */
+    private int[] updateV1;
+    private int[] updateV2;
+    private boolean cleaningUp;
+
+    private static final int[] NO_UPDATE = new int[0];
 
     public Transaction(Doc doc, Object origin, boolean local) {
         this.doc = doc;
         this.deleteSet = new DeleteSet();
         this.beforeState = StructStore.getStateVector(doc.store);
-        /*
-          key: client
-          value: clock
-         */
-        this.afterState = new HashMap<>();
+        this.afterState = StateVector.EMPTY;
         this.changed = new HashMap<>();
         this.changedParentTypes = new HashMap<>();
         this.mergeStructs = new ArrayList<>();
+        this.addedStructs = new ClientClockMap();
         this.origin = origin;
         this.meta = new HashMap<>();
         this.local = local;
@@ -53,9 +72,7 @@ public class Transaction {
     }
 
     public static boolean writeUpdateMessageFromTransaction(UpdateEncoder encoder, Transaction transaction) {
-        if (transaction.deleteSet.clients.isEmpty() &&
-                transaction.afterState.entrySet().stream()
-                        .noneMatch(e -> !Objects.equals(transaction.beforeState.get(e.getKey()), e.getValue()))) {
+        if (transaction.deleteSet.clients.isEmpty() && transaction.beforeState.covers(transaction.afterState)) {
             return false;
         }
         DeleteSet.sortAndMergeDeleteSet(transaction.deleteSet);
@@ -64,6 +81,42 @@ public class Transaction {
         return true;
     }
 
+    /**
+     * 本事务的V1更新, 事务没有改动时为null.
+     * 只能在清理阶段(afterState确定之后)使用, 第一次调用时编码, 之后所有使用者(例如每个"update"监听器)共享同一个数组.
+     * {@link DocOptions#deriveUpdateV1FromV2} 为true时从V2更新转换得到, 同时需要V1和V2时只遍历一次事务.
+     */
+    public int[] getUpdate() {
+        if (updateV1 == null) {
+            if (doc.deriveUpdateV1FromV2) {
+                int[] v2 = getUpdateV2();
+                updateV1 = v2 == null ? NO_UPDATE : Updates.convertUpdateFormatV2ToV1(v2);
+            } else {
+                updateV1 = encodeUpdate(new UpdateEncoderV1(encoding.createEncoder(BufferPool.local())));
+            }
+        }
+        return updateV1 == NO_UPDATE ? null : updateV1;
+    }
+
+    /**
+     * 本事务的V2更新, 事务没有改动时为null. 与{@link #getUpdate()}一样只编码一次.
+     */
+    public int[] getUpdateV2() {
+        if (updateV2 == null) {
+            updateV2 = encodeUpdate(new UpdateEncoderV2<>(encoding.createEncoder(BufferPool.local())));
+        }
+        return updateV2 == NO_UPDATE ? null : updateV2;
+    }
+
+    private int[] encodeUpdate(UpdateEncoder encoder) {
+        if (!cleaningUp) {
+            throw new IllegalStateException("The update of a transaction is only available during its cleanup");
+        }
+        int[] update = writeUpdateMessageFromTransaction(encoder, this) ? encoder.toUint8Array() : NO_UPDATE;
+        encoding.release(encoder.restEncoder);
+        return update;
+    }
+
     public static ID nextID(Transaction transaction) {
         Doc y = transaction.doc;
         return new ID(y.clientID, StructStore.getState(y.store, y.clientID));
@@ -164,6 +217,15 @@ public class Transaction {
         tryMergeDeleteSet(ds, store);
     }
 
+    private static void emitUpdate(Channel<QuadConsumer<int[], Object, Doc, Transaction>> listeners, int[] update, Transaction transaction) {
+        Doc doc = transaction.doc;
+        if (doc.observerExecutor == null) {
+            listeners.emit(update, transaction.origin, doc, transaction);
+        } else {
+            doc.observerExecutor.execute(() -> listeners.emit(update, transaction.origin, doc, transaction));
+        }
+    }
+
     private static void cleanupTransactions(List<Transaction> transactionCleanups, int i) {
         if (i < transactionCleanups.size()) {
             Transaction transaction = transactionCleanups.get(i);
@@ -175,43 +237,38 @@ public class Transaction {
             try {
                 DeleteSet.sortAndMergeDeleteSet(ds);
                 transaction.afterState = StructStore.getStateVector(doc.store);
-                doc.emit("beforeObserverCalls", transaction, doc);
-
-                List<Runnable> callbacks = new ArrayList<>();
+                transaction.cleaningUp = true;
+                doc.beforeObserverCallsListeners.emit(transaction, doc);
 
                 // Observe events on changed types
-                transaction.changed.forEach((type, subs) ->
-                        callbacks.add(() -> {
-                            if (type._item == null || !type._item.deleted()) {
-                                type._callObserver(transaction, subs);
-                            }
-                        })
-                );
+                for (Map.Entry<AbstractType<?>, Set<String>> changed : transaction.changed.entrySet()) {
+                    AbstractType<?> type = changed.getKey();
+                    if (type._item == null || !type._item.deleted()) {
+                        type._callObserver(transaction, changed.getValue());
+                    }
+                }
 
                 // Deep observe events
-                callbacks.add(() -> {
-                    transaction.changedParentTypes.forEach((type, events) -> {
-                        if (!type._dEH.l.isEmpty() && (type._item == null || !type._item.deleted())) {
-                            List<YEvent<?>> filteredEvents = events.stream()
-                                    .filter(event ->
-                                            event.target._item == null || !event.target._item.deleted())
-                                    .collect(Collectors.toList());
-
-                            filteredEvents.forEach(event -> {
-                                event.currentTarget = type;
-                                event.path = null;
-                            });
-
-                            filteredEvents.sort(Comparator.comparingInt(e -> e.getPath().size()));
-
-                            EventHandler.callEventHandlerListeners(type._dEH, filteredEvents, transaction);
-                        }
-                    });
-                });
-
-                callbacks.add(() -> doc.emit("afterTransaction", transaction));
+                for (Map.Entry<AbstractType<?>, List<YEvent<?>>> changed : transaction.changedParentTypes.entrySet()) {
+                    AbstractType<?> type = changed.getKey();
+                    if (!type._dEH.l.isEmpty() && (type._item == null || !type._item.deleted())) {
+                        List<YEvent<?>> filteredEvents = changed.getValue().stream()
+                                .filter(event ->
+                                        event.target._item == null || !event.target._item.deleted())
+                                .collect(Collectors.toList());
+
+                        filteredEvents.forEach(event -> {
+                            event.currentTarget = type;
+                            event.path = null;
+                        });
+
+                        filteredEvents.sort(Comparator.comparingInt(e -> e.getPath().size()));
+
+                        doc.callDeepObservers(type._dEH, filteredEvents, transaction);
+                    }
+                }
 
-                callbacks.forEach(Runnable::run);
+                doc.afterTransactionListeners.emit(transaction);
 
                 if (transaction.needFormattingCleanup) {
                     YTextUtils.cleanupYTextAfterTransaction(transaction);
@@ -222,16 +279,14 @@ public class Transaction {
                 }
                 tryMergeDeleteSet(ds, store);
 
-                transaction.afterState.forEach((client, clock) -> {
-                    long beforeClock = transaction.beforeState.getOrDefault(client, 0);
-                    if (beforeClock != clock) {
-                        List<AbstractStruct> structs = store.clients.get(client);
-                        int firstChangePos = Math.max(StructStore.findIndexSS(structs, beforeClock), 1);
-                        for (int j = structs.size() - 1; j >= firstChangePos; ) {
-                            j -= 1 + tryToMergeWithLefts(structs, j);
-                        }
+                ClientClockMap addedStructs = transaction.addedStructs;
+                for (int k = 0; k < addedStructs.size(); k++) {
+                    List<AbstractStruct> structs = store.clients.get(addedStructs.clientAt(k));
+                    int firstChangePos = Math.max(StructStore.findIndexSS(structs, addedStructs.clockAt(k)), 1);
+                    for (int j = structs.size() - 1; j >= firstChangePos; ) {
+                        j -= 1 + tryToMergeWithLefts(structs, j);
                     }
-                });
+                }
 
                 for (int j = mergeStructs.size() - 1; j >= 0; j--) {
                     AbstractStruct struct = mergeStructs.get(j);
@@ -251,28 +306,25 @@ public class Transaction {
                 }
 
                 if (!transaction.local &&
-                        !Objects.equals(
-                                transaction.afterState.get(doc.clientID),
-                                transaction.beforeState.get(doc.clientID))) {
+                        transaction.afterState.clock(doc.clientID) != transaction.beforeState.clock(doc.clientID)) {
                     System.err.println("[yjs] Changed the client-id because another client seems to be using it.");
                     doc.clientID = Doc.generateNewClientId();
                 }
 
-                doc.emit("afterTransactionCleanup", transaction, doc);
+                doc.afterTransactionCleanupListeners.emit(transaction, doc);
 
-                if (doc._observers.containsKey("update")) {
-                    UpdateEncoderV1 encoder = new UpdateEncoderV1();
-                    boolean hasContent = writeUpdateMessageFromTransaction(encoder, transaction);
-                    if (hasContent) {
-                        doc.emit("update", encoder.toUint8Array(), transaction.origin, doc, transaction);
+                // 没有监听器时不编码更新
+                if (!doc.updateListeners.isEmpty()) {
+                    int[] update = transaction.getUpdate();
+                    if (update != null) {
+                        emitUpdate(doc.updateListeners, update, transaction);
                     }
                 }
 
-                if (doc._observers.containsKey("updateV2")) {
-                    UpdateEncoderV2<?> encoder = new UpdateEncoderV2<>();
-                    boolean hasContent = writeUpdateMessageFromTransaction(encoder, transaction);
-                    if (hasContent) {
-                        doc.emit("updateV2", encoder.toUint8Array(), transaction.origin, doc, transaction);
+                if (!doc.updateV2Listeners.isEmpty()) {
+                    int[] update = transaction.getUpdateV2();
+                    if (update != null) {
+                        emitUpdate(doc.updateV2Listeners, update, transaction);
                     }
                 }
 
@@ -290,13 +342,13 @@ public class Transaction {
                     });
 
                     subdocsRemoved.forEach(doc.getSubdocs()::remove);
-                    doc.emit("subdocs", new SubdocsEvent(subdocsLoaded, subdocsAdded, subdocsRemoved), doc, transaction);
+                    doc.subdocsListeners.emit(new SubdocsEvent(subdocsLoaded, subdocsAdded, subdocsRemoved), doc, transaction);
                     subdocsRemoved.forEach(Doc::destroy);
                 }
 
                 if (transactionCleanups.size() <= i + 1) {
                     doc._transactionCleanups = new ArrayList<>();
-                    doc.emit("afterAllTransactions", doc, transactionCleanups);
+                    doc.afterAllTransactionsListeners.emit(doc, transactionCleanups);
                 } else {
                     cleanupTransactions(transactionCleanups, i + 1);
                 }
@@ -324,9 +376,9 @@ public class Transaction {
             doc._transaction = new Transaction(doc, origin, local);
             transactionCleanups.add(doc._transaction);
             if (transactionCleanups.size() == 1) {
-                doc.emit("beforeAllTransactions", doc);
+                doc.beforeAllTransactionsListeners.emit(doc);
             }
-            doc.emit("beforeTransaction", doc._transaction, doc);
+            doc.beforeTransactionListeners.emit(doc._transaction, doc);
         }
 
         try {
@@ -1,6 +1,7 @@
 package com.ai.utils;
 
 import com.ai.myutils.Maps;
+import com.ai.myutils.Uint8Array;
 import com.ai.myutils.decoder.Decoder;
 import com.ai.myutils.decoder.decoding;
 import com.ai.myutils.encoder.Encoder;
@@ -13,9 +14,9 @@ import com.ai.types.YXmlElement;
 import com.ai.types.YXmlHook;
 import com.ai.types.arraytype.AbstractType;
 import com.ai.types.vo.*;
+import com.ai.utils.codec.CodecFactory;
+import com.ai.utils.codec.UpdateFormat;
 import com.ai.utils.codec.decoder.UpdateDecoder;
-import com.ai.utils.codec.decoder.UpdateDecoderV1;
-import com.ai.utils.codec.decoder.UpdateDecoderV2;
 import com.ai.utils.codec.encoder.*;
 import org.apache.commons.lang3.ObjectUtils;
 
@@ -30,26 +31,48 @@ import static com.ai.utils.DeleteSet.*;
  */
 public class Updates {
 
+    /**
+     * 旧的按Class指定编解码器的重载使用, null保持为null(使用默认格式)
+     */
+    private static CodecFactory format(Class<?> codecClass) {
+        return codecClass == null ? null : UpdateFormat.of(codecClass);
+    }
+
     /**
      * 记录更新日志（V1格式）
      *
      * @param update 更新数据
      */
     public static void logUpdate(int[] update) {
-        logUpdateV2(update, UpdateDecoderV1.class);
+        logUpdateV2(update, UpdateFormat.V1);
+    }
+
+    public static void logUpdate(byte[] update) {
+        logUpdateV2(update, UpdateFormat.V1);
     }
 
     /**
      * 记录更新日志（指定解码器格式）
      *
      * @param update       更新数据
-     * @param decoderClass 解码器类
+     * @param decoderFactory 解码格式(UpdateFormat)
+     */
+    public static void logUpdateV2(int[] update, CodecFactory decoderFactory) {
+        logUpdateV2(Uint8Array.toByteArray(update), decoderFactory);
+    }
+
+    /**
+     * @deprecated use {@link #logUpdateV2(int[], CodecFactory)} with an {@link UpdateFormat}
      */
+    @Deprecated
     public static void logUpdateV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
-        decoderClass = ObjectUtils.getIfNull(decoderClass, UpdateDecoderV2.class);
+        logUpdateV2(update, format(decoderClass));
+    }
+
+    public static void logUpdateV2(byte[] update, CodecFactory decoderFactory) {
+        decoderFactory = ObjectUtils.getIfNull(decoderFactory, UpdateFormat.V2);
         try {
-            UpdateDecoder decoder = decoderClass.getConstructor(Decoder.class)
-                    .newInstance(new Decoder(update));
+            UpdateDecoder decoder = decoderFactory.newDecoder(new Decoder(update));
 
             LazyStructReader lazyDecoder = new LazyStructReader(decoder, false);
             List<AbstractStruct> structs = new ArrayList<>();
@@ -73,20 +96,36 @@ public class Updates {
      * @return 解码结果（结构体和删除集）
      */
     public static DecodedUpdate decodeUpdate(int[] update) {
-        return decodeUpdateV2(update, UpdateDecoderV1.class);
+        return decodeUpdateV2(update, UpdateFormat.V1);
+    }
+
+    public static DecodedUpdate decodeUpdate(byte[] update) {
+        return decodeUpdateV2(update, UpdateFormat.V1);
     }
 
     /**
      * 解码更新数据（指定解码器格式）
      *
      * @param update       更新数据
-     * @param decoderClass 解码器类
+     * @param decoderFactory 解码格式(UpdateFormat)
      * @return 解码结果（结构体和删除集）
      */
+    public static DecodedUpdate decodeUpdateV2(int[] update, CodecFactory decoderFactory) {
+        return decodeUpdateV2(Uint8Array.toByteArray(update), decoderFactory);
+    }
+
+    /**
+     * @deprecated use {@link #decodeUpdateV2(int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static DecodedUpdate decodeUpdateV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
+        return decodeUpdateV2(update, format(decoderClass));
+    }
+
+    public static DecodedUpdate decodeUpdateV2(byte[] update, CodecFactory decoderFactory) {
+        decoderFactory = ObjectUtils.getIfNull(decoderFactory, UpdateFormat.V2);
         try {
-            UpdateDecoder decoder = decoderClass.getConstructor(Decoder.class)
-                    .newInstance(new Decoder(update));
+            UpdateDecoder decoder = decoderFactory.newDecoder(new Decoder(update));
 
             LazyStructReader lazyDecoder = new LazyStructReader(decoder, false);
             List<AbstractStruct> structs = new ArrayList<>();
@@ -108,37 +147,59 @@ public class Updates {
      * @return 合并后的更新数据
      */
     public static int[] mergeUpdates(List<int[]> updates) {
-        return mergeUpdatesV2(updates, UpdateDecoderV1.class, UpdateEncoderV1.class);
+        return mergeUpdatesV2(updates, UpdateFormat.V1, UpdateFormat.V1);
+    }
+
+    public static byte[] mergeUpdatesBytes(List<byte[]> updates) {
+        return mergeUpdatesV2Bytes(updates, UpdateFormat.V1, UpdateFormat.V1);
     }
 
     public static int[] mergeUpdatesV2(List<int[]> updates) {
-        return mergeUpdatesV2(updates, UpdateDecoderV2.class, UpdateEncoderV2.class);
+        return mergeUpdatesV2(updates, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static byte[] mergeUpdatesV2Bytes(List<byte[]> updates) {
+        return mergeUpdatesV2Bytes(updates, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static int[] mergeUpdatesV2(List<int[]> updates,
+                                       CodecFactory decoderFactory,
+                                       CodecFactory encoderFactory) {
+        if (updates.size() == 1) {
+            return updates.get(0);
+        }
+        return Uint8Array.toIntArray(mergeUpdatesV2Bytes(Uint8Array.toByteArrays(updates), decoderFactory, encoderFactory));
+    }
+
+    /**
+     * @deprecated use {@link #mergeUpdatesV2(List, CodecFactory, CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
+    public static int[] mergeUpdatesV2(List<int[]> updates,
+                                       Class<? extends UpdateDecoder> decoderClass,
+                                       Class<? extends UpdateEncoder> encoderClass) {
+        return mergeUpdatesV2(updates, format(decoderClass), format(encoderClass));
     }
 
     /**
      * 合并多个更新（指定编解码器格式）
      *
      * @param updates      更新列表
-     * @param decoderClass 解码器类
-     * @param encoderClass 编码器类
+     * @param decoderFactory 解码格式(UpdateFormat)
+     * @param encoderFactory 编码格式(UpdateFormat)
      * @return 合并后的更新数据
      */
-    public static int[] mergeUpdatesV2(List<int[]> updates,
-                                       Class<? extends UpdateDecoder> decoderClass,
-                                       Class<? extends UpdateEncoder> encoderClass) {
+    public static byte[] mergeUpdatesV2Bytes(List<byte[]> updates,
+                                             CodecFactory decoderFactory,
+                                             CodecFactory encoderFactory) {
         if (updates.size() == 1) {
             return updates.get(0);
         }
 
         // Initialize decoders
         List<UpdateDecoder> updateDecoders = new ArrayList<>();
-        for (int[] update : updates) {
-            try {
-                UpdateDecoder decoder = decoderClass.getConstructor(Decoder.class).newInstance(new Decoder(update));
-                updateDecoders.add(decoder);
-            } catch (Exception e) {
-                throw new RuntimeException("Failed to create decoder", e);
-            }
+        for (byte[] update : updates) {
+            updateDecoders.add(decoderFactory.newDecoder(new Decoder(update)));
         }
 
         List<LazyStructReader> lazyStructDecoders = updateDecoders.stream()
@@ -148,12 +209,7 @@ public class Updates {
         CurrentWrite currWrite = null;
 
         // Initialize encoder
-        UpdateEncoder updateEncoder;
-        try {
-            updateEncoder = encoderClass.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create encoder", e);
-        }
+        UpdateEncoder updateEncoder = encoderFactory.newEncoder();
         LazyStructWriter lazyStructEncoder = new LazyStructWriter(updateEncoder);
 
         while (true) {
@@ -259,7 +315,7 @@ public class Updates {
         DeleteSet mergedDeleteSet = mergeDeleteSets(deleteSets);
         writeDeleteSet(updateEncoder, mergedDeleteSet);
 
-        return updateEncoder.toUint8Array();
+        return updateEncoder.toByteArray();
     }
 
     /**
@@ -269,27 +325,51 @@ public class Updates {
      * @return 状态向量数据
      */
     public static int[] encodeStateVectorFromUpdate(int[] update) {
-        return encodeStateVectorFromUpdateV2(update, UpdateEncoderV1.class, UpdateDecoderV1.class);
+        return encodeStateVectorFromUpdateV2(update, UpdateFormat.V1, UpdateFormat.V1);
+    }
+
+    public static byte[] encodeStateVectorFromUpdate(byte[] update) {
+        return encodeStateVectorFromUpdateV2(update, UpdateFormat.V1, UpdateFormat.V1);
     }
 
     public static int[] encodeStateVectorFromUpdateV2(int[] update) {
-        return encodeStateVectorFromUpdateV2(update, UpdateEncoderV2.class, UpdateDecoderV2.class);
+        return encodeStateVectorFromUpdateV2(update, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static byte[] encodeStateVectorFromUpdateV2(byte[] update) {
+        return encodeStateVectorFromUpdateV2(update, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static int[] encodeStateVectorFromUpdateV2(int[] update,
+                                                      CodecFactory YEncoder,
+                                                      CodecFactory YDecoder) {
+        return Uint8Array.toIntArray(encodeStateVectorFromUpdateV2(Uint8Array.toByteArray(update), YEncoder, YDecoder));
+    }
+
+    /**
+     * @deprecated use {@link #encodeStateVectorFromUpdateV2(int[], CodecFactory, CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
+    public static int[] encodeStateVectorFromUpdateV2(int[] update,
+                                                      Class<? extends UpdateEncoder> YEncoder,
+                                                      Class<? extends UpdateDecoder> YDecoder) {
+        return encodeStateVectorFromUpdateV2(update, format(YEncoder), format(YDecoder));
     }
 
     /**
      * 从更新数据生成状态向量（指定编解码器格式）
      *
      * @param update   更新数据
-     * @param YEncoder 编码器类
-     * @param YDecoder 解码器类
+     * @param YEncoder 编码格式(UpdateFormat)
+     * @param YDecoder 解码格式(UpdateFormat)
      * @return 状态向量数据
      */
-    public static int[] encodeStateVectorFromUpdateV2(int[] update,
-                                                      Class<? extends UpdateEncoder> YEncoder,
-                                                      Class<? extends UpdateDecoder> YDecoder) {
+    public static byte[] encodeStateVectorFromUpdateV2(byte[] update,
+                                                       CodecFactory YEncoder,
+                                                       CodecFactory YDecoder) {
         try {
-            UpdateEncoder encoder = YEncoder.newInstance();
-            UpdateDecoder decoder = YDecoder.getConstructor(Decoder.class).newInstance(decoding.createDecoder(update));
+            UpdateEncoder encoder = YEncoder.newEncoder();
+            UpdateDecoder decoder = YDecoder.newDecoder(decoding.createDecoder(update));
 
             LazyStructReader updateDecoder = new LazyStructReader(decoder, false);
             AbstractStruct curr = updateDecoder.curr;
@@ -332,10 +412,10 @@ public class Updates {
                 encoding.writeVarUint(enc, size);
                 encoding.writeBinaryEncoder(enc, encoder.restEncoder);
                 encoder.restEncoder = enc;
-                return encoder.toUint8Array();
+                return encoder.toByteArray();
             } else {
                 encoding.writeVarUint(encoder.restEncoder, 0);
-                return encoder.toUint8Array();
+                return encoder.toByteArray();
             }
 
         } catch (Exception e) {
@@ -351,20 +431,36 @@ public class Updates {
      * @return 包含from和to映射的元数据
      */
     public static UpdateMeta parseUpdateMeta(int[] update) {
-        return parseUpdateMetaV2(update, UpdateDecoderV1.class);
+        return parseUpdateMetaV2(update, UpdateFormat.V1);
+    }
+
+    public static UpdateMeta parseUpdateMeta(byte[] update) {
+        return parseUpdateMetaV2(update, UpdateFormat.V1);
     }
 
     /**
      * 解析更新元数据（指定解码器格式）
      *
      * @param update       更新数据
-     * @param decoderClass 解码器类
+     * @param decoderFactory 解码格式(UpdateFormat)
      * @return 包含from和to映射的元数据
      */
+    public static UpdateMeta parseUpdateMetaV2(int[] update, CodecFactory decoderFactory) {
+        return parseUpdateMetaV2(Uint8Array.toByteArray(update), decoderFactory);
+    }
+
+    /**
+     * @deprecated use {@link #parseUpdateMetaV2(int[], CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static UpdateMeta parseUpdateMetaV2(int[] update, Class<? extends UpdateDecoder> decoderClass) {
+        return parseUpdateMetaV2(update, format(decoderClass));
+    }
+
+    public static UpdateMeta parseUpdateMetaV2(byte[] update, CodecFactory decoderFactory) {
+        decoderFactory = ObjectUtils.getIfNull(decoderFactory, UpdateFormat.V2);
         try {
-            UpdateDecoder decoder = decoderClass.getConstructor(Decoder.class)
-                    .newInstance(new Decoder(update));
+            UpdateDecoder decoder = decoderFactory.newDecoder(new Decoder(update));
 
             LazyStructReader reader = new LazyStructReader(decoder, false);
             AbstractStruct curr = reader.curr;
@@ -395,7 +491,27 @@ public class Updates {
     }
 
     public static int[] diffUpdateV2(int[] update, int[] sv) {
-        return diffUpdateV2(update, sv, UpdateDecoderV2.class, UpdateEncoderV2.class);
+        return diffUpdateV2(update, sv, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static byte[] diffUpdateV2(byte[] update, byte[] sv) {
+        return diffUpdateV2(update, sv, UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static int[] diffUpdateV2(int[] update, int[] sv,
+                                     CodecFactory decoderFactory,
+                                     CodecFactory encoderFactory) {
+        return Uint8Array.toIntArray(diffUpdateV2(Uint8Array.toByteArray(update), Uint8Array.toByteArray(sv), decoderFactory, encoderFactory));
+    }
+
+    /**
+     * @deprecated use {@link #diffUpdateV2(int[], int[], CodecFactory, CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
+    public static int[] diffUpdateV2(int[] update, int[] sv,
+                                     Class<? extends UpdateDecoder> decoderClass,
+                                     Class<? extends UpdateEncoder> encoderClass) {
+        return diffUpdateV2(update, sv, format(decoderClass), format(encoderClass));
     }
 
     /**
@@ -403,20 +519,19 @@ public class Updates {
      *
      * @param update       更新数据
      * @param sv           状态向量
-     * @param decoderClass 解码器类
-     * @param encoderClass 编码器类
+     * @param decoderFactory 解码格式(UpdateFormat)
+     * @param encoderFactory 编码格式(UpdateFormat)
      * @return 差异更新数据
      */
-    public static int[] diffUpdateV2(int[] update, int[] sv,
-                                     Class<? extends UpdateDecoder> decoderClass,
-                                     Class<? extends UpdateEncoder> encoderClass) {
+    public static byte[] diffUpdateV2(byte[] update, byte[] sv,
+                                      CodecFactory decoderFactory,
+                                      CodecFactory encoderFactory) {
         try {
-            Map<Integer, Integer> state = Encoding.decodeStateVector(sv);
-            UpdateEncoder encoder = encoderClass.newInstance();
+            StateVector state = Encoding.decodeStateVector(sv);
+            UpdateEncoder encoder = encoderFactory.newEncoder();
             LazyStructWriter writer = new LazyStructWriter(encoder);
 
-            UpdateDecoder decoder = decoderClass.getConstructor(Decoder.class)
-                    .newInstance(new Decoder(update));
+            UpdateDecoder decoder = decoderFactory.newDecoder(new Decoder(update));
             LazyStructReader reader = new LazyStructReader(decoder, false);
 
             while (reader.curr != null) {
@@ -450,7 +565,7 @@ public class Updates {
             finishLazyStructWriting(writer);
             DeleteSet ds = readDeleteSet(decoder);
             writeDeleteSet(encoder, ds);
-            return encoder.toUint8Array();
+            return encoder.toByteArray();
         } catch (Exception e) {
             throw new RuntimeException("Failed to compute update diff", e);
         }
@@ -464,7 +579,11 @@ public class Updates {
      * @return 差异更新数据
      */
     public static int[] diffUpdate(int[] update, int[] sv) {
-        return diffUpdateV2(update, sv, UpdateDecoderV1.class, UpdateEncoderV1.class);
+        return diffUpdateV2(update, sv, UpdateFormat.V1, UpdateFormat.V1);
+    }
+
+    public static byte[] diffUpdate(byte[] update, byte[] sv) {
+        return diffUpdateV2(update, sv, UpdateFormat.V1, UpdateFormat.V1);
     }
 
     /**
@@ -508,9 +627,10 @@ public class Updates {
         if (lazyWriter.written > 0) {
             lazyWriter.clientStructs.add(new ClientStruct(
                     lazyWriter.written,
-                    encoding.toUint8Array(lazyWriter.encoder.restEncoder)
+                    encoding.toByteArray(lazyWriter.encoder.restEncoder)
             ));
-            lazyWriter.encoder.restEncoder = encoding.createEncoder();
+            // the content was copied, reuse the encoder's chunks for the next client
+            encoding.release(lazyWriter.encoder.restEncoder);
             lazyWriter.written = 0;
         }
     }
@@ -567,29 +687,36 @@ public class Updates {
      *
      * @param update           原始更新数据
      * @param blockTransformer 块转换函数
-     * @param YDecoder         解码器类
-     * @param YEncoder         编码器类
+     * @param YDecoder         解码格式(UpdateFormat)
+     * @param YEncoder         编码格式(UpdateFormat)
      * @return 转换后的更新数据
      */
+    public static int[] convertUpdateFormat(int[] update,
+                                            Function<AbstractStruct, AbstractStruct> blockTransformer,
+                                            CodecFactory YDecoder,
+                                            CodecFactory YEncoder) {
+        return Uint8Array.toIntArray(convertUpdateFormat(Uint8Array.toByteArray(update), blockTransformer, YDecoder, YEncoder));
+    }
+
+    /**
+     * @deprecated use {@link #convertUpdateFormat(int[], Function, CodecFactory, CodecFactory)} with an {@link UpdateFormat}
+     */
+    @Deprecated
     public static int[] convertUpdateFormat(int[] update,
                                             Function<AbstractStruct, AbstractStruct> blockTransformer,
                                             Class<? extends UpdateDecoder> YDecoder,
                                             Class<? extends UpdateEncoder> YEncoder) {
-        UpdateDecoder updateDecoder;
-        try {
-            updateDecoder = YDecoder.getConstructor(Decoder.class)
-                    .newInstance(new Decoder(update));
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create decoder", e);
-        }
+        return convertUpdateFormat(update, blockTransformer, format(YDecoder), format(YEncoder));
+    }
+
+    public static byte[] convertUpdateFormat(byte[] update,
+                                             Function<AbstractStruct, AbstractStruct> blockTransformer,
+                                             CodecFactory YDecoder,
+                                             CodecFactory YEncoder) {
+        UpdateDecoder updateDecoder = YDecoder.newDecoder(new Decoder(update));
 
         LazyStructReader lazyDecoder = new LazyStructReader(updateDecoder, false);
-        UpdateEncoder updateEncoder;
-        try {
-            updateEncoder = YEncoder.newInstance();
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to create encoder", e);
-        }
+        UpdateEncoder updateEncoder = YEncoder.newEncoder();
         LazyStructWriter lazyWriter = new LazyStructWriter(updateEncoder);
 
         for (AbstractStruct curr = lazyDecoder.curr; curr != null; curr = lazyDecoder.next()) {
@@ -599,7 +726,7 @@ public class Updates {
         finishLazyStructWriting(lazyWriter);
         DeleteSet ds = readDeleteSet(updateDecoder);
         writeDeleteSet(updateEncoder, ds);
-        return updateEncoder.toUint8Array();
+        return updateEncoder.toByteArray();
     }
 
 
@@ -693,7 +820,11 @@ public class Updates {
      * @return 混淆后的更新数据
      */
     public static int[] obfuscateUpdate(int[] update, ObfuscatorOptions opts) {
-        return convertUpdateFormat(update, createObfuscator(opts), UpdateDecoderV1.class, UpdateEncoderV1.class);
+        return convertUpdateFormat(update, createObfuscator(opts), UpdateFormat.V1, UpdateFormat.V1);
+    }
+
+    public static byte[] obfuscateUpdate(byte[] update, ObfuscatorOptions opts) {
+        return convertUpdateFormat(update, createObfuscator(opts), UpdateFormat.V1, UpdateFormat.V1);
     }
 
     /**
@@ -704,7 +835,11 @@ public class Updates {
      * @return 混淆后的更新数据
      */
     public static int[] obfuscateUpdateV2(int[] update, ObfuscatorOptions opts) {
-        return convertUpdateFormat(update, createObfuscator(opts), UpdateDecoderV2.class, UpdateEncoderV2.class);
+        return convertUpdateFormat(update, createObfuscator(opts), UpdateFormat.V2, UpdateFormat.V2);
+    }
+
+    public static byte[] obfuscateUpdateV2(byte[] update, ObfuscatorOptions opts) {
+        return convertUpdateFormat(update, createObfuscator(opts), UpdateFormat.V2, UpdateFormat.V2);
     }
 
     /**
@@ -714,7 +849,11 @@ public class Updates {
      * @return V2格式更新数据
      */
     public static int[] convertUpdateFormatV1ToV2(int[] update) {
-        return convertUpdateFormat(update, Function.identity(), UpdateDecoderV1.class, UpdateEncoderV2.class);
+        return convertUpdateFormat(update, Function.identity(), UpdateFormat.V1, UpdateFormat.V2);
+    }
+
+    public static byte[] convertUpdateFormatV1ToV2(byte[] update) {
+        return convertUpdateFormat(update, Function.identity(), UpdateFormat.V1, UpdateFormat.V2);
     }
 
     /**
@@ -724,7 +863,11 @@ public class Updates {
      * @return V1格式更新数据
      */
     public static int[] convertUpdateFormatV2ToV1(int[] update) {
-        return convertUpdateFormat(update, Function.identity(), UpdateDecoderV2.class, UpdateEncoderV1.class);
+        return convertUpdateFormat(update, Function.identity(), UpdateFormat.V2, UpdateFormat.V1);
+    }
+
+    public static byte[] convertUpdateFormatV2ToV1(byte[] update) {
+        return convertUpdateFormat(update, Function.identity(), UpdateFormat.V2, UpdateFormat.V1);
     }
 
 
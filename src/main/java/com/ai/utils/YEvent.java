@@ -6,7 +6,7 @@ import com.ai.types.arraytype.AbstractType;
 
 import java.util.*;
 
-public class YEvent<T extends AbstractType<?>> {
+public class YEvent<T extends AbstractType<?>> implements Cloneable {
     public final T target;
     public AbstractType<?> currentTarget;
     public final Transaction transaction;
@@ -14,6 +14,10 @@ public class YEvent<T extends AbstractType<?>> {
     private Map<String, KeyChange> keys;
     private List<Delta> delta;
     List<Object> path;
+    /**
+     * 由snapshot()创建的副本
+     */
+    private boolean detached;
 
     public static class KeyChange {
         public final String action; // "add", "update", or "delete"
@@ -57,7 +61,31 @@ public class YEvent<T extends AbstractType<?>> {
         return path;
     }
 
+    /**
+     * 先计算好changes/keys/delta和相对于currentTarget的path, 再复制一份.
+     * 副本不再依赖事务的清理阶段, 可以在事务结束后或其他线程中读取, 之后currentTarget的修改也不影响它.
+     * <p>
+     * 只有预先计算的getChanges/getKeys/getDelta/getPath属于这个副本. target, currentTarget和transaction
+     * 仍是文档中的对象, 在其他线程中读取时会与之后的事务竞争: 不能读取它们的内容(toJSON, get, deleteSet等),
+     * 只能作为标识使用(例如比较target, 读取transaction.origin). 副本的deletes()会抛出IllegalStateException
+     */
+    @SuppressWarnings("unchecked")
+    public YEvent<T> snapshot() {
+        getChanges();
+        getPath();
+        try {
+            YEvent<T> snapshot = (YEvent<T>) clone();
+            snapshot.detached = true;
+            return snapshot;
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public boolean deletes(AbstractStruct struct) {
+        if (detached) {
+            throw new IllegalStateException("deletes() reads the live transaction, use the precomputed changes of the snapshot");
+        }
         return DeleteSet.isDeleted(transaction.deleteSet, struct.id);
     }
 
@@ -181,26 +209,78 @@ public class YEvent<T extends AbstractType<?>> {
         return changes;
     }
 
-    private static List<Object> getPathTo(AbstractType<?> parent, AbstractType<?> child) {
-        List<Object> path = new ArrayList<>();
-        while (child._item != null && !child.equals(parent)) {
-            if (child._item.parentSub != null) {
-                // parent is map-ish
-                path.add(0, child._item.parentSub);
-            } else {
-                // parent is array-ish
-                int i = 0;
-                Item c = ((AbstractType<?>) child._item.parent)._start;
-                while (c != child._item && c != null) {
-                    if (!c.deleted() && c.countable()) {
-                        i += c.length;
-                    }
-                    c = c.right;
-                }
-                path.add(0, i);
+    /**
+     * 类型到根类型的路径, 每个节点是类型在父类型中的位置(parentSub或下标), 并链接到父类型的节点.
+     * 一个事务中每个类型只计算一次(见{@link Transaction#pathNodes}), 子类型共享父类型的前缀,
+     * 所以深层嵌套时一个事件的路径是O(深度)的, 不会对每个事件和每个祖先重复遍历兄弟节点.
+     */
+    static final class PathNode {
+        final AbstractType<?> type;
+        final PathNode parent;
+        final Object segment;
+
+        PathNode(AbstractType<?> type, PathNode parent, Object segment) {
+            this.type = type;
+            this.parent = parent;
+            this.segment = segment;
+        }
+    }
+
+    private static PathNode pathNode(Transaction transaction, AbstractType<?> type) {
+        if (transaction.pathNodes == null) {
+            transaction.pathNodes = new HashMap<>();
+        }
+        Map<AbstractType<?>, PathNode> nodes = transaction.pathNodes;
+        PathNode node = nodes.get(type);
+        if (node != null) {
+            return node;
+        }
+        // 收集还没有节点的祖先, 再从上往下创建
+        List<AbstractType<?>> missing = new ArrayList<>();
+        AbstractType<?> t = type;
+        while (node == null) {
+            missing.add(t);
+            if (t._item == null) {
+                break;
             }
-            child = (AbstractType<?>) child._item.parent;
+            t = (AbstractType<?>) t._item.parent;
+            node = nodes.get(t);
         }
-        return path;
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            AbstractType<?> child = missing.get(i);
+            node = child._item == null ? new PathNode(child, null, null) : new PathNode(child, node, segmentOf(child));
+            nodes.put(child, node);
+        }
+        return node;
+    }
+
+    private static Object segmentOf(AbstractType<?> child) {
+        if (child._item.parentSub != null) {
+            // parent is map-ish
+            return child._item.parentSub;
+        }
+        // parent is array-ish
+        int i = 0;
+        Item c = ((AbstractType<?>) child._item.parent)._start;
+        while (c != child._item && c != null) {
+            if (!c.deleted() && c.countable()) {
+                i += c.length;
+            }
+            c = c.right;
+        }
+        return i;
+    }
+
+    private List<Object> getPathTo(AbstractType<?> parent, AbstractType<?> child) {
+        PathNode node = pathNode(transaction, child);
+        int length = 0;
+        for (PathNode n = node; n.parent != null && !n.type.equals(parent); n = n.parent) {
+            length++;
+        }
+        Object[] path = new Object[length];
+        for (PathNode n = node; length > 0; n = n.parent) {
+            path[--length] = n.segment;
+        }
+        return new ArrayList<>(Arrays.asList(path));
     }
-}
\ No newline at end of file
+}
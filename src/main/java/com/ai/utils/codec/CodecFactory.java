@@ -0,0 +1,14 @@
+package com.ai.utils.codec;
+
+import com.ai.myutils.decoder.Decoder;
+import com.ai.utils.codec.decoder.UpdateDecoder;
+import com.ai.utils.codec.encoder.UpdateEncoder;
+
+/**
+ * Creates the update decoder/encoder of one update format, see {@link UpdateFormat}.
+ */
+public interface CodecFactory {
+    UpdateDecoder newDecoder(Decoder decoder);
+
+    UpdateEncoder newEncoder();
+}
@@ -0,0 +1,51 @@
+package com.ai.utils.codec;
+
+import com.ai.myutils.decoder.Decoder;
+import com.ai.utils.codec.decoder.UpdateDecoder;
+import com.ai.utils.codec.decoder.UpdateDecoderV1;
+import com.ai.utils.codec.decoder.UpdateDecoderV2;
+import com.ai.utils.codec.encoder.UpdateEncoder;
+import com.ai.utils.codec.encoder.UpdateEncoderV1;
+import com.ai.utils.codec.encoder.UpdateEncoderV2;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The update formats known to Yjs.
+ */
+public enum UpdateFormat implements CodecFactory {
+    V1(UpdateDecoderV1::new, UpdateEncoderV1::new),
+    V2(UpdateDecoderV2::new, UpdateEncoderV2::new);
+
+    private final Function<Decoder, UpdateDecoder> decoderFactory;
+    private final Supplier<UpdateEncoder> encoderFactory;
+
+    UpdateFormat(Function<Decoder, UpdateDecoder> decoderFactory, Supplier<UpdateEncoder> encoderFactory) {
+        this.decoderFactory = decoderFactory;
+        this.encoderFactory = encoderFactory;
+    }
+
+    /**
+     * The format of a decoder/encoder class, e.g. {@code UpdateDecoderV1.class -> V1}.
+     */
+    public static UpdateFormat of(Class<?> codecClass) {
+        if (codecClass == UpdateDecoderV1.class || codecClass == UpdateEncoderV1.class) {
+            return V1;
+        }
+        if (codecClass == UpdateDecoderV2.class || codecClass == UpdateEncoderV2.class) {
+            return V2;
+        }
+        throw new IllegalArgumentException("Unknown update codec: " + codecClass);
+    }
+
+    @Override
+    public UpdateDecoder newDecoder(Decoder decoder) {
+        return decoderFactory.apply(decoder);
+    }
+
+    @Override
+    public UpdateEncoder newEncoder() {
+        return encoderFactory.get();
+    }
+}
@@ -24,15 +24,15 @@ public class UpdateDecoderV2 extends DSDecoderV2 {
         super(decoder);
         this.keys = new ArrayList<>();
         decoding.readVarUint(decoder); // read feature flag - currently unused
-        this.keyClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8Array(decoder));
-        this.clientDecoder = new UintOptRleDecoder(decoding.readVarUint8Array(decoder));
-        this.leftClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8Array(decoder));
-        this.rightClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8Array(decoder));
-        this.infoDecoder = new RleDecoder<>(decoding.readVarUint8Array(decoder), decoding::readUint8);
-        this.stringDecoder = new StringDecoder(decoding.readVarUint8Array(decoder));
-        this.parentInfoDecoder = new RleDecoder<>(decoding.readVarUint8Array(decoder), decoding::readUint8);
-        this.typeRefDecoder = new UintOptRleDecoder(decoding.readVarUint8Array(decoder));
-        this.lenDecoder = new UintOptRleDecoder(decoding.readVarUint8Array(decoder));
+        this.keyClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8View(decoder));
+        this.clientDecoder = new UintOptRleDecoder(decoding.readVarUint8View(decoder));
+        this.leftClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8View(decoder));
+        this.rightClockDecoder = new IntDiffOptRleDecoder(decoding.readVarUint8View(decoder));
+        this.infoDecoder = new RleDecoder<>(decoding.readVarUint8View(decoder), decoding::readUint8);
+        this.stringDecoder = new StringDecoder(decoding.readVarUint8View(decoder));
+        this.parentInfoDecoder = new RleDecoder<>(decoding.readVarUint8View(decoder), decoding::readUint8);
+        this.typeRefDecoder = new UintOptRleDecoder(decoding.readVarUint8View(decoder));
+        this.lenDecoder = new UintOptRleDecoder(decoding.readVarUint8View(decoder));
     }
 
     public ID readLeftID() {
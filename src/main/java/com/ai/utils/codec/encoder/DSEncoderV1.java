@@ -1,5 +1,6 @@
 package com.ai.utils.codec.encoder;
 
+import com.ai.myutils.encoder.Encoder;
 import com.ai.myutils.encoder.encoding;
 
 public abstract class DSEncoderV1 extends UpdateEncoder {
@@ -8,9 +9,13 @@ public abstract class DSEncoderV1 extends UpdateEncoder {
         super();
     }
 
+    public DSEncoderV1(Encoder restEncoder) {
+        super(restEncoder);
+    }
+
     @Override
-    public int[] toUint8Array() {
-        return encoding.toUint8Array(this.restEncoder);
+    public byte[] toByteArray() {
+        return encoding.toByteArray(this.restEncoder);
     }
 
     public void writeDsClock(int clock) {
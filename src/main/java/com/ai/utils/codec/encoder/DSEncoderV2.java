@@ -11,9 +11,14 @@ public abstract class DSEncoderV2 extends UpdateEncoder {
         this.dsCurrVal = 0;
     }
 
+    public DSEncoderV2(Encoder restEncoder) {
+        super(restEncoder);
+        this.dsCurrVal = 0;
+    }
+
     @Override
-    public int[] toUint8Array() {
-        return encoding.toUint8Array(this.restEncoder);
+    public byte[] toByteArray() {
+        return encoding.toByteArray(this.restEncoder);
     }
 
     public void resetDsCurVal() {
@@ -1,5 +1,6 @@
 package com.ai.utils.codec.encoder;
 
+import com.ai.myutils.Uint8Array;
 import com.ai.myutils.encoder.Encoder;
 import com.ai.myutils.encoder.encoding;
 import com.ai.types.ID;
@@ -11,7 +12,21 @@ public abstract class UpdateEncoder {
         this.restEncoder = encoding.createEncoder();
     }
 
-    public abstract int[] toUint8Array();
+    /**
+     * @param restEncoder encoder for the rest of the content, e.g. one backed by a {@link com.ai.myutils.encoder.BufferPool}
+     */
+    public UpdateEncoder(Encoder restEncoder) {
+        this.restEncoder = restEncoder;
+    }
+
+    public abstract byte[] toByteArray();
+
+    /**
+     * Adapter for the int[] "Uint8Array" API, prefer {@link #toByteArray()}.
+     */
+    public int[] toUint8Array() {
+        return Uint8Array.toIntArray(toByteArray());
+    }
 
     public abstract void writeInfo(int info);
 
@@ -1,5 +1,6 @@
 package com.ai.utils.codec.encoder;
 
+import com.ai.myutils.encoder.Encoder;
 import com.ai.myutils.encoder.encoding;
 import com.ai.types.ID;
 import com.alibaba.fastjson.JSON;
@@ -9,6 +10,10 @@ public class UpdateEncoderV1 extends DSEncoderV1 {
         super();
     }
 
+    public UpdateEncoderV1(Encoder restEncoder) {
+        super(restEncoder);
+    }
+
     public void writeLeftID(ID id) {
         encoding.writeVarUint(this.restEncoder, id.client);
         encoding.writeVarUint(this.restEncoder, id.clock);
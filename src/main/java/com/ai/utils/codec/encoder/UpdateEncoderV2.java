@@ -25,6 +25,15 @@ public class UpdateEncoderV2<T> extends DSEncoderV2 {
 
     public UpdateEncoderV2() {
         super();
+        init();
+    }
+
+    public UpdateEncoderV2(Encoder restEncoder) {
+        super(restEncoder);
+        init();
+    }
+
+    private void init() {
         this.keyMap = new HashMap<>();
         this.keyClock = 0;
         this.keyClockEncoder = new IntDiffOptRleEncoder();
@@ -39,20 +48,22 @@ public class UpdateEncoderV2<T> extends DSEncoderV2 {
     }
 
     @Override
-    public int[] toUint8Array() {
-        Encoder encoder = encoding.createEncoder();
+    public byte[] toByteArray() {
+        Encoder encoder = encoding.createEncoder(BufferPool.local());
         encoding.writeVarUint(encoder, 0);
-        encoding.writeVarUint8Array(encoder, this.keyClockEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, this.clientEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, this.leftClockEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, this.rightClockEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, encoding.toUint8Array(this.infoEncoder));
-        encoding.writeVarUint8Array(encoder, this.stringEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, encoding.toUint8Array(this.parentInfoEncoder));
-        encoding.writeVarUint8Array(encoder, this.typeRefEncoder.toUint8Array());
-        encoding.writeVarUint8Array(encoder, this.lenEncoder.toUint8Array());
-        encoding.writeUint8Array(encoder, encoding.toUint8Array(this.restEncoder));
-        return encoding.toUint8Array(encoder);
+        encoding.writeVarUint8Array(encoder, this.keyClockEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, this.clientEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, this.leftClockEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, this.rightClockEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, encoding.toByteArray(this.infoEncoder));
+        encoding.writeVarUint8Array(encoder, this.stringEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, encoding.toByteArray(this.parentInfoEncoder));
+        encoding.writeVarUint8Array(encoder, this.typeRefEncoder.toByteArray());
+        encoding.writeVarUint8Array(encoder, this.lenEncoder.toByteArray());
+        encoding.writeBinaryEncoder(encoder, this.restEncoder);
+        byte[] res = encoding.toByteArray(encoder);
+        encoding.release(encoder);
+        return res;
     }
 
     public void writeLeftID(ID id) {
@@ -0,0 +1,105 @@
+package com.ai.utils.structstore;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Client id -> clock, keyed and valued by primitive ints. Entries are kept in insertion order,
+ * the keys are hashed by an {@link IntKeyTable} like in {@link ClientStructMap}.
+ * The {@code int} methods don't box, the {@link java.util.Map} view is read only.
+ */
+public class ClientClockMap extends AbstractMap<Integer, Integer> {
+    private final IntKeyTable clients = new IntKeyTable();
+    private int[] clocks = new int[clients.capacity()];
+
+    public boolean containsKey(int client) {
+        return clients.indexOf(client) >= 0;
+    }
+
+    public int getOrDefault(int client, int defaultValue) {
+        int i = clients.indexOf(client);
+        return i < 0 ? defaultValue : clocks[i];
+    }
+
+    /**
+     * Records the clock unless the client already has one.
+     */
+    public void putIfAbsent(int client, int clock) {
+        if (clients.indexOf(client) >= 0) {
+            return;
+        }
+        int i = clients.add(client);
+        if (clocks.length < clients.capacity()) {
+            clocks = Arrays.copyOf(clocks, clients.capacity());
+        }
+        clocks[i] = clock;
+    }
+
+    /**
+     * Client of the i-th entry, in insertion order.
+     */
+    public int clientAt(int i) {
+        return clients.keys[i];
+    }
+
+    /**
+     * Clock of the i-th entry.
+     */
+    public int clockAt(int i) {
+        return clocks[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey((int) (Integer) key);
+    }
+
+    @Override
+    public Integer get(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int i = clients.indexOf((Integer) key);
+        return i < 0 ? null : clocks[i];
+    }
+
+    @Override
+    public int size() {
+        return clients.size;
+    }
+
+    @Override
+    public Set<Entry<Integer, Integer>> entrySet() {
+        return new AbstractSet<Entry<Integer, Integer>>() {
+            @Override
+            public Iterator<Entry<Integer, Integer>> iterator() {
+                return new Iterator<Entry<Integer, Integer>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < clients.size;
+                    }
+
+                    @Override
+                    public Entry<Integer, Integer> next() {
+                        if (next >= clients.size) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next++;
+                        return new SimpleImmutableEntry<>(clients.keys[i], clocks[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return clients.size;
+            }
+        };
+    }
+}
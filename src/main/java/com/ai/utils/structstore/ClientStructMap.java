@@ -0,0 +1,180 @@
+package com.ai.utils.structstore;
+
+import com.ai.structs.AbstractStruct;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Client id -> structs of that client, keyed by primitive ints.
+ * Entries are kept in insertion order, the keys are hashed by an {@link IntKeyTable}.
+ * The {@code int} overloads don't box the client id, the {@link Map} methods are kept for compatibility.
+ * Clients are never removed from a store, so single entries can't be removed.
+ */
+public class ClientStructMap extends AbstractMap<Integer, List<AbstractStruct>> {
+    private final IntKeyTable clients = new IntKeyTable();
+    private List<AbstractStruct>[] values;
+
+    public ClientStructMap() {
+        clear();
+    }
+
+    public List<AbstractStruct> get(int client) {
+        int i = clients.indexOf(client);
+        return i < 0 ? null : values[i];
+    }
+
+    public List<AbstractStruct> getOrDefault(int client, List<AbstractStruct> defaultValue) {
+        int i = clients.indexOf(client);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    public boolean containsKey(int client) {
+        return clients.indexOf(client) >= 0;
+    }
+
+    public List<AbstractStruct> put(int client, List<AbstractStruct> structs) {
+        int i = clients.indexOf(client);
+        if (i >= 0) {
+            List<AbstractStruct> old = values[i];
+            values[i] = structs;
+            return old;
+        }
+        i = clients.add(client);
+        if (values.length < clients.capacity()) {
+            values = Arrays.copyOf(values, clients.capacity());
+        }
+        values[i] = structs;
+        return null;
+    }
+
+    /**
+     * Client of the i-th entry, in insertion order.
+     */
+    public int clientAt(int i) {
+        return clients.keys[i];
+    }
+
+    /**
+     * Structs of the i-th entry.
+     */
+    public List<AbstractStruct> structsAt(int i) {
+        return values[i];
+    }
+
+    @Override
+    public List<AbstractStruct> get(Object key) {
+        return key instanceof Integer ? get((int) (Integer) key) : null;
+    }
+
+    @Override
+    public List<AbstractStruct> getOrDefault(Object key, List<AbstractStruct> defaultValue) {
+        return key instanceof Integer ? getOrDefault((int) (Integer) key, defaultValue) : defaultValue;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer && containsKey((int) (Integer) key);
+    }
+
+    @Override
+    public List<AbstractStruct> put(Integer key, List<AbstractStruct> value) {
+        return put((int) key, value);
+    }
+
+    @Override
+    public int size() {
+        return clients.size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void clear() {
+        clients.clear();
+        values = new List[clients.capacity()];
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Integer, ? super List<AbstractStruct>> action) {
+        for (int i = 0; i < clients.size; i++) {
+            action.accept(clients.keys[i], values[i]);
+        }
+    }
+
+    @Override
+    public Set<Entry<Integer, List<AbstractStruct>>> entrySet() {
+        return new AbstractSet<Entry<Integer, List<AbstractStruct>>>() {
+            @Override
+            public Iterator<Entry<Integer, List<AbstractStruct>>> iterator() {
+                return new Iterator<Entry<Integer, List<AbstractStruct>>>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < clients.size;
+                    }
+
+                    @Override
+                    public Entry<Integer, List<AbstractStruct>> next() {
+                        if (next >= clients.size) {
+                            throw new NoSuchElementException();
+                        }
+                        return new ClientEntry(next++);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return clients.size;
+            }
+        };
+    }
+
+    private class ClientEntry implements Entry<Integer, List<AbstractStruct>> {
+        private final int index;
+
+        ClientEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Integer getKey() {
+            return clients.keys[index];
+        }
+
+        @Override
+        public List<AbstractStruct> getValue() {
+            return values[index];
+        }
+
+        @Override
+        public List<AbstractStruct> setValue(List<AbstractStruct> value) {
+            List<AbstractStruct> old = values[index];
+            values[index] = value;
+            return old;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return clients.keys[index] ^ (values[index] == null ? 0 : values[index].hashCode());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.ai.utils.structstore;
+
+import java.util.Arrays;
+
+/**
+ * The int keys of {@link ClientStructMap} and {@link ClientClockMap}: open addressing with linear probing,
+ * keys are kept in insertion order and never removed one by one. The maps keep their values in arrays
+ * parallel to {@link #keys}, growing them to {@link #capacity()} after {@link #add}.
+ */
+final class IntKeyTable {
+    int[] keys;
+    int size;
+    /**
+     * slot -> index + 1 into keys, 0 for a free slot. The length is a power of two.
+     */
+    private int[] table;
+
+    IntKeyTable() {
+        clear();
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Index of the key in insertion order, -1 if it is absent.
+     */
+    int indexOf(int key) {
+        int mask = table.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            int i = table[slot];
+            if (i == 0) {
+                return -1;
+            }
+            if (keys[i - 1] == key) {
+                return i - 1;
+            }
+        }
+    }
+
+    private void link(int index) {
+        int mask = table.length - 1;
+        int slot = hash(keys[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Appends a key that is not in the table yet and returns its index.
+     */
+    int add(int key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size] = key;
+        size++;
+        if (size * 2 > table.length) {
+            table = new int[table.length * 2];
+            for (int j = 0; j < size; j++) {
+                link(j);
+            }
+        } else {
+            link(size - 1);
+        }
+        return size - 1;
+    }
+
+    /**
+     * Length the value arrays need to hold an entry for every key index.
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    void clear() {
+        keys = new int[4];
+        table = new int[8];
+        size = 0;
+    }
+}
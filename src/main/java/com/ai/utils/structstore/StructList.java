@@ -0,0 +1,278 @@
+package com.ai.utils.structstore;
+
+import com.ai.structs.AbstractStruct;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The structs of one client, sorted by clock.
+ * Stored in chunks of at most {@link #MAX_CHUNK} structs, so a split in the middle of a long history
+ * only shifts one chunk instead of the whole tail. Appending stays amortized O(1),
+ * sequential access goes through the chunk of the previous lookup.
+ */
+public class StructList extends AbstractList<AbstractStruct> implements RandomAccess {
+    static final int MAX_CHUNK = 512;
+
+    private AbstractStruct[][] chunks;
+    private int[] sizes;
+    /**
+     * index of the first struct of each chunk
+     */
+    private int[] starts;
+    private int chunkCount;
+    private int size;
+    /**
+     * chunk of the last lookup
+     */
+    private int cursor;
+    /**
+     * index of the last {@link #findIndex} result, only a hint: it is checked before use,
+     * so it doesn't need to be adjusted when structs are inserted or removed
+     */
+    private int hint;
+
+    public StructList() {
+        init();
+    }
+
+    private void init() {
+        chunks = new AbstractStruct[4][];
+        chunks[0] = new AbstractStruct[8];
+        sizes = new int[4];
+        starts = new int[4];
+        chunkCount = 1;
+        size = 0;
+        cursor = 0;
+        hint = 0;
+    }
+
+    /**
+     * The chunk that contains index. Only chunk 0 may be empty, and only if the list is.
+     */
+    private int chunkOf(int index) {
+        int c = cursor;
+        if (index >= starts[c]) {
+            if (index < starts[c] + sizes[c]) {
+                return c;
+            }
+            if (c + 1 < chunkCount && index < starts[c + 1] + sizes[c + 1]) {
+                return cursor = c + 1;
+            }
+        }
+        int lo = 0;
+        int hi = chunkCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return cursor = lo;
+    }
+
+    private void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    @Override
+    public AbstractStruct get(int index) {
+        checkIndex(index, size);
+        int c = chunkOf(index);
+        return chunks[c][index - starts[c]];
+    }
+
+    @Override
+    public AbstractStruct set(int index, AbstractStruct struct) {
+        checkIndex(index, size);
+        int c = chunkOf(index);
+        AbstractStruct[] chunk = chunks[c];
+        AbstractStruct old = chunk[index - starts[c]];
+        chunk[index - starts[c]] = struct;
+        return old;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(AbstractStruct struct) {
+        int c = chunkCount - 1;
+        if (sizes[c] == MAX_CHUNK) {
+            c = insertChunk(chunkCount, new AbstractStruct[8]);
+            starts[c] = size;
+        }
+        ensureCapacity(c);
+        chunks[c][sizes[c]++] = struct;
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int index, AbstractStruct struct) {
+        if (index == size) {
+            add(struct);
+            return;
+        }
+        checkIndex(index, size);
+        int c = chunkOf(index);
+        if (sizes[c] == MAX_CHUNK) {
+            splitChunk(c);
+            if (index >= starts[c + 1]) {
+                c++;
+            }
+        }
+        ensureCapacity(c);
+        AbstractStruct[] chunk = chunks[c];
+        int offset = index - starts[c];
+        System.arraycopy(chunk, offset, chunk, offset + 1, sizes[c] - offset);
+        chunk[offset] = struct;
+        sizes[c]++;
+        for (int j = c + 1; j < chunkCount; j++) {
+            starts[j]++;
+        }
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public AbstractStruct remove(int index) {
+        checkIndex(index, size);
+        int c = chunkOf(index);
+        AbstractStruct[] chunk = chunks[c];
+        int offset = index - starts[c];
+        AbstractStruct old = chunk[offset];
+        System.arraycopy(chunk, offset + 1, chunk, offset, sizes[c] - offset - 1);
+        chunk[--sizes[c]] = null;
+        for (int j = c + 1; j < chunkCount; j++) {
+            starts[j]--;
+        }
+        if (sizes[c] == 0 && chunkCount > 1) {
+            removeChunk(c);
+        }
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        for (int i = toIndex - 1; i >= fromIndex; i--) {
+            remove(i);
+        }
+    }
+
+    @Override
+    public void clear() {
+        init();
+        modCount++;
+    }
+
+    private boolean covers(int index, long clock) {
+        int c = chunkOf(index);
+        AbstractStruct struct = chunks[c][index - starts[c]];
+        return struct.id.clock <= clock && clock < struct.id.clock + struct.length;
+    }
+
+    /**
+     * Find the struct that contains clock, see {@link StructStore#findIndexSS}.
+     * Integrating updates and iterating structs mostly look up the struct found last time or the one after it,
+     * those are checked before the binary search.
+     */
+    int findIndex(long clock) {
+        if (size == 0) {
+            throw new RuntimeException("Unexpected case");
+        }
+        int h = hint;
+        if (h < size) {
+            if (covers(h, clock)) {
+                return h;
+            }
+            if (h + 1 < size && covers(h + 1, clock)) {
+                return hint = h + 1;
+            }
+        }
+        // the last chunk that starts at or before clock
+        int lo = 0;
+        int hi = chunkCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (chunks[mid][0].id.clock <= clock) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        AbstractStruct[] chunk = chunks[lo];
+        int left = 0;
+        int right = sizes[lo] - 1;
+        while (left <= right) {
+            int mid = (left + right) >>> 1;
+            AbstractStruct struct = chunk[mid];
+            int midclock = struct.id.clock;
+            if (midclock <= clock) {
+                if (clock < midclock + struct.length) {
+                    cursor = lo;
+                    return hint = starts[lo] + mid;
+                }
+                left = mid + 1;
+            } else {
+                right = mid - 1;
+            }
+        }
+        throw new RuntimeException("Unexpected case");
+    }
+
+    private void ensureCapacity(int c) {
+        AbstractStruct[] chunk = chunks[c];
+        if (sizes[c] == chunk.length) {
+            chunks[c] = Arrays.copyOf(chunk, Math.min(chunk.length * 2, MAX_CHUNK));
+        }
+    }
+
+    private void splitChunk(int c) {
+        AbstractStruct[] chunk = chunks[c];
+        int half = sizes[c] / 2;
+        AbstractStruct[] right = new AbstractStruct[MAX_CHUNK];
+        System.arraycopy(chunk, half, right, 0, sizes[c] - half);
+        Arrays.fill(chunk, half, sizes[c], null);
+        int r = insertChunk(c + 1, right);
+        sizes[r] = sizes[c] - half;
+        starts[r] = starts[c] + half;
+        sizes[c] = half;
+    }
+
+    private int insertChunk(int c, AbstractStruct[] chunk) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            sizes = Arrays.copyOf(sizes, chunkCount * 2);
+            starts = Arrays.copyOf(starts, chunkCount * 2);
+        }
+        System.arraycopy(chunks, c, chunks, c + 1, chunkCount - c);
+        System.arraycopy(sizes, c, sizes, c + 1, chunkCount - c);
+        System.arraycopy(starts, c, starts, c + 1, chunkCount - c);
+        chunks[c] = chunk;
+        sizes[c] = 0;
+        chunkCount++;
+        return c;
+    }
+
+    private void removeChunk(int c) {
+        System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+        System.arraycopy(sizes, c + 1, sizes, c, chunkCount - c - 1);
+        System.arraycopy(starts, c + 1, starts, c, chunkCount - c - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+        if (cursor >= chunkCount) {
+            cursor = chunkCount - 1;
+        }
+    }
+}
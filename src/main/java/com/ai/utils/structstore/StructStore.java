@@ -4,30 +4,82 @@ import com.ai.structs.AbstractStruct;
 import com.ai.structs.GC;
 import com.ai.structs.item.Item;
 import com.ai.types.ID;
+import com.ai.utils.StateVector;
 import com.ai.utils.Transaction;
-import org.apache.commons.collections4.CollectionUtils;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 
 public class StructStore {
-    public final Map<Integer, List<AbstractStruct>> clients = new HashMap<>();
+    /**
+     * client id -> structs of the client, see {@link ClientStructMap} and {@link StructList}
+     */
+    public final ClientStructMap clients = new ClientStructMap();
     /**
      * @type {null | { missing: Map<number, number>, update: Uint8Array }}
      */
     public Structs pendingStructs;
     public int[] pendingDs;
+    /**
+     * the state vector of the last getStateVector call, null if it has to be recomputed
+     */
+    private StateVector stateVector;
+    /**
+     * clients that got new structs since stateVector was computed
+     */
+    private int[] changedClients = new int[8];
+    private int changedCount;
 
-    public static Map<Integer, Integer> getStateVector(StructStore store) {
-        Map<Integer, Integer> sm = new HashMap<>();
-        store.clients.forEach((client, structs) -> {
-            AbstractStruct struct = structs.get(structs.size() - 1);
-            sm.put(client, (struct.id.clock + struct.length));
-        });
-        return sm;
+    /**
+     * Every transaction takes the state vector twice, so it is kept between calls:
+     * only the clients that got new structs since the last call are looked up and merged in.
+     */
+    public static StateVector getStateVector(StructStore store) {
+        ClientStructMap clients = store.clients;
+        StateVector sv = store.stateVector;
+        if (sv != null && store.changedCount > 0) {
+            StateVector.Builder changed = new StateVector.Builder(store.changedCount);
+            for (int i = 0; i < store.changedCount; i++) {
+                int client = store.changedClients[i];
+                changed.put(client, getState(store, client));
+            }
+            sv = sv.merge(changed.build());
+        }
+        // clients that were put into the map directly are not tracked
+        if (sv == null || sv.size() != clients.size()) {
+            StateVector.Builder builder = new StateVector.Builder(clients.size());
+            for (int i = 0; i < clients.size(); i++) {
+                List<AbstractStruct> structs = clients.structsAt(i);
+                AbstractStruct struct = structs.get(structs.size() - 1);
+                builder.put(clients.clientAt(i), struct.id.clock + struct.length);
+            }
+            sv = builder.build();
+        }
+        store.stateVector = sv;
+        store.changedCount = 0;
+        return sv;
+    }
+
+    private static void markChanged(StructStore store, int client) {
+        if (store.stateVector == null) {
+            return;
+        }
+        int n = store.changedCount;
+        if (n > 0 && store.changedClients[n - 1] == client) {
+            return;
+        }
+        if (n == store.changedClients.length) {
+            if (n >= store.stateVector.size()) {
+                // most clients changed, recomputing is cheaper
+                store.stateVector = null;
+                store.changedCount = 0;
+                return;
+            }
+            store.changedClients = Arrays.copyOf(store.changedClients, n * 2);
+        }
+        store.changedClients[n] = client;
+        store.changedCount = n + 1;
     }
 
     public static int getState(StructStore store, int client) {
@@ -51,8 +103,8 @@ public class StructStore {
 
     public static void addStruct(StructStore store, AbstractStruct struct) {
         List<AbstractStruct> structs = store.clients.get(struct.id.client);
-        if (CollectionUtils.isEmpty(structs)) {
-            structs = new ArrayList<>();
+        if (structs == null || structs.isEmpty()) {
+            structs = new StructList();
             store.clients.put(struct.id.client, structs);
         } else {
             AbstractStruct lastStruct = structs.get(structs.size() - 1);
@@ -61,6 +113,16 @@ public class StructStore {
             }
         }
         structs.add(struct);
+        markChanged(store, struct.id.client);
+    }
+
+    /**
+     * Same as {@link #addStruct(StructStore, AbstractStruct)}, also records the struct in
+     * {@link Transaction#addedStructs}.
+     */
+    public static void addStruct(Transaction transaction, AbstractStruct struct) {
+        addStruct(transaction.doc.store, struct);
+        transaction.addedStructs.putIfAbsent(struct.id.client, struct.id.clock);
     }
 
     /**
@@ -71,6 +133,9 @@ public class StructStore {
      * @return {number}
      */
     public static int findIndexSS(List<AbstractStruct> structs, long clock) {
+        if (structs instanceof StructList) {
+            return ((StructList) structs).findIndex(clock);
+        }
         int left = 0;
         int right = structs.size() - 1;
         AbstractStruct mid = structs.get(right);
@@ -77,13 +77,12 @@ public class UndoManager extends ObservableV2 {
             }
 
             DeleteSet insertions = new DeleteSet();
-            transaction.afterState.forEach((client, endClock) -> {
-                int startClock = transaction.beforeState.getOrDefault(client, 0);
-                int len = endClock - startClock;
-                if (len > 0) {
-                    DeleteSet.addToDeleteSet(insertions, client, startClock, len);
-                }
-            });
+            StateVector changedState = transaction.afterState.diff(transaction.beforeState);
+            for (int i = 0; i < changedState.size(); i++) {
+                int client = changedState.clientAt(i);
+                int startClock = transaction.beforeState.clock(client);
+                DeleteSet.addToDeleteSet(insertions, client, startClock, changedState.clockAt(i) - startClock);
+            }
 
             long now = System.currentTimeMillis();
             boolean didAdd = false;
@@ -2,6 +2,7 @@ package com.ai.test;
 import com.ai.myutils.Lists;
 import com.ai.myutils.Maps;
 import com.ai.protocol.Awareness;
+import com.ai.protocol.AwarenessStateCodec;
 import com.ai.protocol.vo.ChangeEvent;
 import com.ai.protocol.vo.UpdateEvent;
 import com.ai.utils.Doc;
@@ -11,7 +12,10 @@ import java.util.*;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 
 public class AwarenessTest {
@@ -94,4 +98,198 @@ public class AwarenessTest {
         assertNull(aw1.getStates().get(0));
         assertEquals(lastChangeLocal.get(), lastChange.get());
     }
+
+    /**
+     * 二进制状态编码, 以及未变化的状态沿用缓存的编码
+     */
+    @Test
+    public void testBinaryStateCodec() {
+        Doc doc1 = new Doc();
+        doc1.clientID = 0;
+        Doc doc2 = new Doc();
+        doc2.clientID = 1;
+        Awareness aw1 = new Awareness(doc1, AwarenessStateCodec.BINARY);
+        Awareness aw2 = new Awareness(doc2, AwarenessStateCodec.BINARY);
+        AtomicReference<ChangeEvent> lastChange = new AtomicReference<>();
+        aw1.on("update", (UpdateEvent event, Object origin) -> {
+            List<Integer> allClients = new ArrayList<>();
+            allClients.addAll(event.added);
+            allClients.addAll(event.removed);
+            allClients.addAll(event.updated);
+            Awareness.applyAwarenessUpdate(aw2, Awareness.encodeAwarenessUpdate(aw1, allClients), "custom");
+        });
+        aw2.<ChangeEvent, String>on("change", (change, origin) -> lastChange.set(change));
+
+        Map<String, Object> cursor = Maps.of("anchor", 12, "head", 0.1);
+        Map<String, Object> state = Maps.of("name", "alice", "cursor", cursor, "ids", Lists.of(1, 2, 3));
+        aw1.setLocalState(state);
+        assertEquals(state, aw2.getStates().get(0));
+        assertEquals(Lists.of(0), lastChange.get().added);
+
+        // 重新广播相同的状态: 时钟前进, 远端沿用原来的状态对象且不触发change
+        Map<String, Object> received = aw2.getStates().get(0);
+        lastChange.set(null);
+        aw1.setLocalState(new HashMap<>(state));
+        assertNull(lastChange.get());
+        assertSame(received, aw2.getStates().get(0));
+        assertEquals(2, aw2.meta.get(0).clock);
+
+        aw1.setLocalStateField("name", "bob");
+        assertEquals("bob", aw2.getStates().get(0).get("name"));
+        assertEquals(Lists.of(0), lastChange.get().updated);
+
+        // 负数字段
+        Map<String, Object> negative = Maps.of("anchor", -1, "name", "bob", "offset", -100000);
+        assertEquals(negative, AwarenessStateCodec.BINARY.decode(AwarenessStateCodec.BINARY.encode(negative)));
+        aw1.setLocalState(negative);
+        assertEquals(negative, aw2.getStates().get(0));
+
+        // JSON编码与原来的writeVarString格式一致
+        aw1.setStateCodec(AwarenessStateCodec.JSON);
+        aw2.setStateCodec(AwarenessStateCodec.JSON);
+        aw1.setLocalState(Maps.of("x", 1));
+        assertEquals(Maps.of("x", 1), aw2.getStates().get(0));
+        int[] modified = Awareness.modifyAwarenessUpdate(Awareness.encodeAwarenessUpdate(aw1, Lists.of(0)),
+                s -> Maps.of("x", 2));
+        Doc doc3 = new Doc();
+        doc3.clientID = 2;
+        Awareness aw3 = new Awareness(doc3);
+        Awareness.applyAwarenessUpdate(aw3, modified, "custom");
+        assertEquals(Maps.of("x", 2), aw3.getStates().get(0));
+        aw1.destroy();
+        aw2.destroy();
+        aw3.destroy();
+    }
+
+    /**
+     * 超时检查: 本地状态续期, 远程状态超时移除; 所有实例共用一个调度线程
+     */
+    @Test
+    public void testOutdatedStates() {
+        Doc doc1 = new Doc();
+        doc1.clientID = 0;
+        Doc doc2 = new Doc();
+        doc2.clientID = 1;
+        Awareness aw1 = new Awareness(doc1);
+        Awareness aw2 = new Awareness(doc2);
+        aw1.on("update", (UpdateEvent event, Object origin) -> {
+            List<Integer> allClients = new ArrayList<>();
+            allClients.addAll(event.added);
+            allClients.addAll(event.removed);
+            allClients.addAll(event.updated);
+            Awareness.applyAwarenessUpdate(aw2, Awareness.encodeAwarenessUpdate(aw1, allClients), "custom");
+        });
+        AtomicReference<String> removedBy = new AtomicReference<>();
+        aw2.<ChangeEvent, String>on("change", (change, origin) -> {
+            if (!change.removed.isEmpty()) {
+                removedBy.set(origin);
+            }
+        });
+        aw1.setLocalState(Maps.of("x", 1));
+        long now = System.currentTimeMillis();
+
+        // 未到续期时间
+        aw1.checkOutdated(now);
+        assertEquals(1, aw2.meta.get(0).clock);
+        // 超过一半超时时间后本地状态续期, 远端收到新的时钟
+        aw1.checkOutdated(now + Awareness.outdatedTimeout / 2 + 1000);
+        assertEquals(2, aw2.meta.get(0).clock);
+
+        aw2.checkOutdated(now + Awareness.outdatedTimeout - 2000);
+        assertEquals(Maps.of("x", 1), aw2.getStates().get(0));
+        aw2.checkOutdated(now + Awareness.outdatedTimeout + 1000);
+        assertFalse(aw2.getStates().containsKey(0));
+        assertEquals("timeout", removedBy.get());
+        assertEquals(Maps.of(), aw2.getLocalState());
+
+        List<Awareness> more = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            more.add(new Awareness(new Doc()));
+        }
+        long timerThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("awareness-timeout")).count();
+        assertEquals(1, timerThreads);
+        more.forEach(Awareness::destroy);
+        aw1.destroy();
+        aw2.destroy();
+    }
+
+    /**
+     * 增量更新只携带变化的字段, 缺少中间更新时需重新获取完整状态
+     */
+    @Test
+    public void testDeltaUpdates() {
+        Doc doc1 = new Doc();
+        doc1.clientID = 0;
+        Doc doc2 = new Doc();
+        doc2.clientID = 1;
+        Doc doc3 = new Doc();
+        doc3.clientID = 2;
+        Awareness aw1 = new Awareness(doc1);
+        Awareness aw2 = new Awareness(doc2);
+        Awareness aw3 = new Awareness(doc3);
+        List<int[]> sent = new ArrayList<>();
+        AtomicReference<ChangeEvent> lastChange = new AtomicReference<>();
+        aw2.<ChangeEvent, String>on("change", (change, origin) -> lastChange.set(change));
+
+        StringBuilder bio = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            bio.append("presence ");
+        }
+        aw1.setLocalState(Maps.of("name", "alice", "bio", bio.toString(), "cursor", 1));
+        // 连接时先同步完整状态
+        int[] full = Awareness.encodeAwarenessUpdate(aw1, Lists.of(0));
+        Awareness.applyAwarenessUpdate(aw2, full, "custom");
+        assertEquals(aw1.getLocalState(), aw2.getStates().get(0));
+
+        aw1.on("update", (UpdateEvent event, Object origin) -> {
+            List<Integer> allClients = new ArrayList<>();
+            allClients.addAll(event.added);
+            allClients.addAll(event.removed);
+            allClients.addAll(event.updated);
+            int[] update = Awareness.encodeAwarenessDeltaUpdate(aw1, allClients);
+            sent.add(update);
+            assertTrue(Awareness.applyAwarenessDeltaUpdate(aw2, update, "custom").isEmpty());
+        });
+
+        aw1.setLocalStateField("cursor", 2);
+        assertEquals(aw1.getLocalState(), aw2.getStates().get(0));
+        assertEquals(Lists.of(0), lastChange.get().updated);
+        assertTrue(sent.get(sent.size() - 1).length < full.length / 10);
+
+        Map<String, Object> withoutBio = new HashMap<>(aw1.getLocalState());
+        withoutBio.remove("bio");
+        aw1.setLocalState(withoutBio);
+        assertEquals(withoutBio, aw2.getStates().get(0));
+
+        // 没有变化的续期不触发change
+        lastChange.set(null);
+        aw1.setLocalState(aw1.getLocalState());
+        assertNull(lastChange.get());
+        assertEquals(aw1.meta.get(0).clock, aw2.meta.get(0).clock);
+
+        // aw3只收到了最后一个增量, 需要完整状态
+        int[] last = sent.get(sent.size() - 1);
+        assertEquals(Lists.of(0), Awareness.applyAwarenessDeltaUpdate(aw3, last, "custom"));
+        assertFalse(aw3.getStates().containsKey(0));
+        Awareness.applyAwarenessUpdate(aw3, Awareness.encodeAwarenessUpdate(aw1, Lists.of(0)), "custom");
+        assertEquals(aw1.getLocalState(), aw3.getStates().get(0));
+        aw1.setLocalStateField("cursor", 3);
+        assertTrue(Awareness.applyAwarenessDeltaUpdate(aw3, sent.get(sent.size() - 1), "custom").isEmpty());
+        assertEquals(aw1.getLocalState(), aw3.getStates().get(0));
+
+        // 增量中的字段值也用状态编码写入
+        for (Awareness aw : Arrays.asList(aw1, aw2)) {
+            aw.setStateCodec(AwarenessStateCodec.BINARY);
+        }
+        aw1.setLocalStateField("cursor", -1);
+        assertEquals(-1, aw2.getStates().get(0).get("cursor"));
+        assertEquals(aw1.getLocalState(), aw2.getStates().get(0));
+
+        aw1.setLocalState(null);
+        assertFalse(aw2.getStates().containsKey(0));
+        aw1.destroy();
+        aw2.destroy();
+        aw3.destroy();
+    }
 }
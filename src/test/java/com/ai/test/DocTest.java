@@ -2,6 +2,8 @@ package com.ai.test;
 
 import com.ai.Y;
 import com.ai.myutils.observable.BinaryConsumer;
+import com.ai.myutils.observable.QuadConsumer;
+import com.ai.structs.item.Item;
 import com.ai.types.YArray;
 import com.ai.types.YMap;
 import com.ai.types.YXmlFragment;
@@ -11,13 +13,22 @@ import com.ai.types.ytext.YText;
 import com.ai.utils.Doc;
 import com.ai.utils.DocOptions;
 import com.ai.utils.Transaction;
+import com.ai.utils.YEvent;
 import com.ai.utils.undo.UndoManager;
+import com.alibaba.fastjson.JSONObject;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class DocTest {
 
@@ -283,4 +294,488 @@ public class DocTest {
         assertFalse(ydoc.isSynced);
         assertNotSame(oldWhenSynced, ydoc.whenSynced);
     }
-}
\ No newline at end of file
+
+    // 单客户端上千个struct, 在中间split跨越StructList的多个chunk
+    @Test
+    public void testSplitsInLongHistory() {
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1500; i++) {
+            text.insert(0, "ab", null);
+            expected.insert(0, "ab");
+        }
+        doc.transact(tr -> {
+            for (int i = expected.length() - 1; i > 0; i -= 7) {
+                text.insert(i, "x", null);
+                expected.insert(i, "x");
+            }
+            return null;
+        });
+        for (int i = 1; i < expected.length() - 3; i += 97) {
+            text.delete(i, 3);
+            expected.delete(i, i + 3);
+        }
+        doc.store.integrityCheck();
+        assertEquals(expected.toString(), text.toString());
+
+        Doc doc2 = new Doc();
+        Y.applyUpdate(doc2, Y.encodeStateAsUpdate(doc));
+        doc2.store.integrityCheck();
+        assertEquals(expected.toString(), doc2.getText("text").toString());
+    }
+
+    // 事务只记录新增结构体的client, 状态向量按变化的client增量更新
+    @Test
+    public void testStateVectorAcrossTransactions() {
+        Doc doc = new Doc();
+        for (int client = 1; client <= 20; client++) {
+            Doc remote = new Doc();
+            remote.clientID = client;
+            remote.getText("text").insert(0, "r", null);
+            Y.applyUpdate(doc, Y.encodeStateAsUpdate(remote));
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        doc.<Transaction>on("afterTransaction", transactions::add);
+        doc.getText("text").insert(0, "abc", null);
+        doc.getText("text").delete(0, 1);
+
+        Transaction insert = transactions.get(0);
+        assertEquals(Collections.singletonMap(doc.clientID, 0), insert.addedStructs);
+        assertEquals(21, insert.afterState.size());
+        assertEquals(3, insert.afterState.clock(doc.clientID));
+        assertEquals(1, insert.afterState.clock(7));
+        Transaction delete = transactions.get(1);
+        assertTrue(delete.addedStructs.isEmpty());
+        assertEquals(insert.afterState, delete.beforeState);
+        assertEquals(insert.afterState, delete.afterState);
+
+        Doc doc2 = new Doc();
+        Y.applyUpdate(doc2, Y.encodeStateAsUpdate(doc));
+        assertEquals(Y.decodeStateVector(Y.encodeStateVector(doc2)), Y.decodeStateVector(Y.encodeStateVector(doc)));
+    }
+
+    // 监听器数组写时复制: emit期间注册/注销不影响本次emit
+    @Test
+    public void testObservableListeners() {
+        Doc doc = new Doc();
+        List<String> calls = new ArrayList<>();
+        Consumer<String> late = e -> calls.add("late " + e);
+        Consumer<String> first = new Consumer<String>() {
+            @Override
+            public void accept(String e) {
+                calls.add("first " + e);
+                doc.off("test", this);
+                doc.on("test", late);
+            }
+        };
+        Consumer<String> second = e -> calls.add("second " + e);
+        doc.on("test", first);
+        doc.on("test", second);
+        doc.on("test", second);
+        doc.once("test", e -> calls.add("once " + e));
+        doc.emit("test", "a");
+        doc.emit("test", "b");
+        assertEquals(Arrays.asList("first a", "second a", "once a", "second b", "late b"), calls);
+        doc.off("test", second);
+        doc.off("test", late);
+        assertTrue(doc.channel("test").isEmpty());
+        doc.emit("test", "c");
+        assertEquals(5, calls.size());
+
+        // Doc上的Channel与同名的on/off是同一组监听器
+        List<int[]> updates = new ArrayList<>();
+        QuadConsumer<int[], Object, Doc, Transaction> listener = (update, origin, d, tr) -> updates.add(update);
+        assertTrue(doc.updateListeners.isEmpty());
+        doc.updateListeners.on(listener);
+        doc.on("update", listener);
+        doc.getText("text").insert(0, "a", null);
+        assertEquals(1, updates.size());
+        doc.off("update", listener);
+        assertTrue(doc.updateListeners.isEmpty());
+        doc.getText("text").insert(0, "b", null);
+        assertEquals(1, updates.size());
+    }
+
+    // 深度观察者的事件路径: 相对于各自的currentTarget, 按路径长度排序
+    @Test
+    public void testDeepObserverPaths() {
+        Doc doc = new Doc();
+        YMap root = doc.getMap("map");
+        YArray<Object> list = new YArray<>();
+        root.set("list", list);
+        YMap inner = new YMap();
+        list.push(Arrays.asList("x", "y", inner));
+        YMap leaf = new YMap();
+        inner.set("leaf", leaf);
+
+        List<List<Object>> rootPaths = new ArrayList<>();
+        List<List<Object>> listPaths = new ArrayList<>();
+        root.observeDeep((events, tr) -> events.forEach(e -> rootPaths.add(e.getPath())));
+        list.observeDeep((events, tr) -> events.forEach(e -> listPaths.add(e.getPath())));
+        doc.transact(tr -> {
+            leaf.set("k", "v");
+            list.insert(0, Collections.singletonList("z"));
+            return null;
+        });
+        assertEquals(Arrays.asList(Collections.singletonList("list"), Arrays.asList("list", 3, "leaf")), rootPaths);
+        assertEquals(Arrays.asList(Collections.emptyList(), Arrays.asList(3, "leaf")), listPaths);
+    }
+
+    // 异步观察者: 在执行器上按事务顺序调用, 事件是快照, 慢的监听器不阻塞写入
+    @Test
+    public void testAsyncObservers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Doc doc = new Doc(new DocOptions().setObserverExecutor(executor));
+            YText text = doc.getText("text");
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(6);
+            List<Object> deltas = Collections.synchronizedList(new ArrayList<>());
+            List<int[]> updates = Collections.synchronizedList(new ArrayList<>());
+            text.observe((event, tr) -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                List<YEvent.Delta> delta = event.getDelta();
+                deltas.add(delta.get(delta.size() - 1).insert);
+                done.countDown();
+            });
+            doc.<int[], Object, Doc, Transaction>on("update", (update, origin, d, tr) -> {
+                updates.add(update);
+                done.countDown();
+            });
+            text.insert(0, "a", null);
+            text.insert(1, "b", null);
+            text.insert(2, "c", null);
+            // 写入没有等待被阻塞的观察者
+            assertEquals("abc", text.toString());
+            assertTrue(deltas.isEmpty());
+            release.countDown();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(Collections.singletonList("a"), Collections.singletonList("b"), Collections.singletonList("c")), deltas);
+
+            Doc doc2 = new Doc();
+            updates.forEach(update -> Y.applyUpdate(doc2, update));
+            assertEquals("abc", doc2.getText("text").toString());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 异步观察者在之后的事务修改文档后才执行: 快照中的变化仍是它的事务的, 不能再读取事务的删除集
+     */
+    @Test
+    public void testAsyncObserverSnapshot() {
+        Deque<Runnable> queued = new ArrayDeque<>();
+        Doc doc = new Doc(new DocOptions().setObserverExecutor(queued::add));
+        YMap map = doc.getMap("map");
+        YArray<Object> array = doc.getArray("array");
+        List<YEvent<?>> seen = new ArrayList<>();
+        map.observe((event, tr) -> seen.add(event));
+        array.observe((event, tr) -> seen.add(event));
+
+        doc.transact(tr -> {
+            map.set("a", 1);
+            array.insert(0, Arrays.asList("x", "y"));
+            return null;
+        });
+        doc.transact(tr -> {
+            map.set("a", 2);
+            map.set("b", 3);
+            array.delete(0, 2);
+            return null;
+        });
+        // 两个事务的观察者由一个任务按顺序执行
+        assertTrue(seen.isEmpty());
+        queued.poll().run();
+        assertEquals(4, seen.size());
+
+        YEvent<?> mapEvent = seen.get(0).target == map ? seen.get(0) : seen.get(1);
+        YEvent<?> arrayEvent = seen.get(0).target == array ? seen.get(0) : seen.get(1);
+        assertEquals(Collections.singleton("a"), mapEvent.getKeys().keySet());
+        assertEquals("add", mapEvent.getKeys().get("a").action);
+        List<YEvent.Delta> delta = arrayEvent.getDelta();
+        assertEquals(1, delta.size());
+        assertEquals(Arrays.asList("x", "y"), delta.get(0).insert);
+        // 文档已经是之后的状态
+        assertEquals(2, map.get("a"));
+        assertEquals(0, array.length());
+        assertThrows(IllegalStateException.class, () -> arrayEvent.deletes(array._start));
+    }
+
+    /**
+     * 开启listIndex的文档与普通文档做同样的随机编辑和同步, 内容和按索引读取的结果一致
+     */
+    @Test
+    public void testListIndex() {
+        Doc indexed = new Doc(new DocOptions().setListIndex(true));
+        Doc plain = new Doc();
+        YText text = indexed.getText("text");
+        YArray<Object> array = indexed.getArray("array");
+        assertNotNull(text._index);
+        assertNull(plain.getText("text")._index);
+
+        // 从索引找到的位置插入, 继承前面文本的格式
+        YText formatted = new Doc(new DocOptions().setListIndex(true)).getText("text");
+        formatted.insert(0, "abc");
+        formatted.format(1, 1, Collections.singletonMap("bold", true));
+        formatted.insert(2, "X");
+        assertEquals(Collections.singletonMap("bold", true), formatted.toDelta().get(1).get("attributes"));
+        assertEquals("bX", formatted.toDelta().get(1).get("insert"));
+
+        Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            for (Doc doc : Arrays.asList(indexed, plain)) {
+                YText t = doc.getText("text");
+                YArray<Object> a = doc.getArray("array");
+                for (int op = 0; op < 5; op++) {
+                    int len = t.length();
+                    int choice = random.nextInt(4);
+                    if (choice == 0 || len == 0) {
+                        t.insert(random.nextInt(len + 1), "abc".substring(random.nextInt(3)));
+                    } else if (choice == 1) {
+                        int index = random.nextInt(len);
+                        t.delete(index, Math.min(len - index, random.nextInt(4) + 1));
+                    } else if (choice == 2) {
+                        int index = random.nextInt(len);
+                        t.format(index, Math.min(len - index, 3), Collections.singletonMap("bold", random.nextBoolean() ? true : null));
+                    } else if (a.length() > 0 && random.nextBoolean()) {
+                        a.delete(random.nextInt(a.length()), 1);
+                    } else {
+                        a.insert(random.nextInt(a.length() + 1), Arrays.asList(round, op));
+                    }
+                }
+            }
+            byte[] toPlain = Y.encodeStateAsUpdateBytes(indexed, Y.encodeStateVectorBytes(plain));
+            byte[] toIndexed = Y.encodeStateAsUpdateBytes(plain, Y.encodeStateVectorBytes(indexed));
+            Y.applyUpdate(plain, toPlain);
+            Y.applyUpdate(indexed, toIndexed);
+
+            assertEquals(plain.getText("text").toDelta(), text.toDelta());
+            assertEquals(text._length, text._index.length());
+            assertEquals(array._length, array._index.length());
+            List<Object> expected = plain.getArray("array").toArray();
+            assertEquals(expected, array.toArray());
+            for (int k = 0; k < 5 && !expected.isEmpty(); k++) {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.get(index), array.get(index));
+            }
+        }
+    }
+
+    /**
+     * 搜索标记属于各自的类型: 两个文档在不同线程上随机编辑, 位置都与模型一致, 标记数量有上限
+     */
+    @Test
+    public void testSearchMarkers() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int seed = 0; seed < 2; seed++) {
+                Random random = new Random(seed);
+                results.add(executor.submit(() -> {
+                    YText text = new Doc().getText("text");
+                    StringBuilder model = new StringBuilder();
+                    for (int i = 0; i < 3000; i++) {
+                        int len = model.length();
+                        if (len > 0 && random.nextInt(3) == 0) {
+                            int index = random.nextInt(len);
+                            int count = Math.min(len - index, random.nextInt(3) + 1);
+                            text.delete(index, count);
+                            model.delete(index, index + count);
+                        } else {
+                            // 每次插入不同的字符, 标记位置出错时内容也不同
+                            int index = random.nextInt(len + 1);
+                            String s = String.valueOf((char) ('a' + i % 26)) + (char) ('A' + i / 26 % 26);
+                            text.insert(index, s);
+                            model.insert(index, s);
+                        }
+                    }
+                    assertEquals(model.toString(), text.toString());
+                    return text._searchMarker.size();
+                }));
+            }
+            for (Future<Integer> result : results) {
+                int markers = result.get(1, TimeUnit.MINUTES);
+                assertTrue(markers > 0 && markers <= 80);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * 从搜索标记开始查找位置时, 插入的文本仍继承前面文本的格式; 结果与不使用搜索标记时一致
+     */
+    @Test
+    public void testFormattedInsert() {
+        YText text = new Doc().getText("text");
+        text.insert(0, "abc");
+        text.format(1, 1, Collections.singletonMap("bold", true));
+        text.insert(2, "X");
+        List<JSONObject> expected = new ArrayList<>();
+        expected.add(new JSONObject().fluentPut("insert", "a"));
+        expected.add(new JSONObject().fluentPut("insert", "bX").fluentPut("attributes", Collections.singletonMap("bold", true)));
+        expected.add(new JSONObject().fluentPut("insert", "c"));
+        assertEquals(expected, text.toDelta());
+
+        int markedOps = 0;
+        for (int seed = 0; seed < 20; seed++) {
+            Random random = new Random(seed);
+            YText marked = new Doc().getText("text");
+            YText plain = new Doc().getText("text");
+            plain._searchMarker = null;
+            for (int op = 0; op < 300; op++) {
+                int len = marked.length();
+                int choice = random.nextInt(4);
+                int index = random.nextInt(len + 1);
+                int count = Math.min(len - index, random.nextInt(5) + 1);
+                String s = String.valueOf((char) ('a' + op % 26));
+                Map<String, Object> attributes = Collections.singletonMap(random.nextBoolean() ? "bold" : "italic",
+                        random.nextBoolean() ? true : null);
+                for (YText t : Arrays.asList(marked, plain)) {
+                    if (choice < 2 || count == 0) {
+                        t.insert(index, s);
+                    } else if (choice == 2) {
+                        t.format(index, count, attributes);
+                    } else {
+                        t.delete(index, count);
+                    }
+                }
+                markedOps += marked._searchMarker.size() > 0 ? 1 : 0;
+            }
+            assertEquals(plain.toDelta(), marked.toDelta());
+        }
+        assertTrue(markedOps > 1000);
+    }
+
+    /**
+     * 事务结束时合并相邻的项: 连续删除的内容只留下一个墓碑, 逐个push的元素合并为一个项
+     */
+    @Test
+    public void testMergeItems() {
+        Doc doc = new Doc();
+        YText text = doc.getText("text");
+        for (int i = 0; i < 100; i++) {
+            text.insert(i, "a");
+        }
+        for (int i = 99; i >= 10; i--) {
+            text.delete(i, 1);
+        }
+        assertEquals("aaaaaaaaaa", text.toString());
+        int items = 0;
+        int tombstones = 0;
+        for (Item n = text._start; n != null; n = n.right) {
+            items++;
+            if (n.deleted()) {
+                tombstones++;
+                assertEquals(90, n.length);
+            }
+        }
+        assertEquals(2, items);
+        assertEquals(1, tombstones);
+
+        YArray<Object> array = doc.getArray("array");
+        for (int i = 0; i < 50; i++) {
+            array.push(Collections.singletonList(i));
+        }
+        assertNull(array._start.right);
+        array.delete(10, 5);
+        array.insert(20, Arrays.asList("x", "y"));
+        List<Object> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            if (i < 10 || i >= 15) {
+                expected.add(i);
+            }
+        }
+        expected.addAll(20, Arrays.asList("x", "y"));
+        assertEquals(expected, array.toArray());
+
+        Doc remote = new Doc();
+        Y.applyUpdate(remote, Y.encodeStateAsUpdate(doc));
+        assertEquals(text.toString(), remote.getText("text").toString());
+        assertEquals(expected, remote.getArray("array").toArray());
+    }
+
+    /**
+     * 多个文档在同一位置并发插入、并发设置同一个key, 按不同顺序应用更新后结果一致
+     */
+    @Test
+    public void testConcurrentInserts() {
+        Doc base = new Doc();
+        base.getText("text").insert(0, "ab");
+        byte[] baseUpdate = Y.encodeStateAsUpdateBytes(base, null);
+        List<byte[]> updates = new ArrayList<>();
+        for (int i = 0; i < 24; i++) {
+            Doc doc = new Doc();
+            Y.applyUpdate(doc, baseUpdate);
+            YText text = doc.getText("text");
+            text.insert(1, "<" + i + ">");
+            text.insert(0, String.valueOf((char) ('A' + i)));
+            YMap map = doc.getMap("map");
+            for (int k = 0; k < 10; k++) {
+                map.set("key", i * 10 + k);
+            }
+            updates.add(Y.encodeStateAsUpdateBytes(doc, Y.encodeStateVectorBytes(base)));
+        }
+        Doc forward = new Doc();
+        Doc backward = new Doc();
+        Y.applyUpdate(forward, baseUpdate);
+        Y.applyUpdate(backward, baseUpdate);
+        for (int i = 0; i < updates.size(); i++) {
+            Y.applyUpdate(forward, updates.get(i));
+            Y.applyUpdate(backward, updates.get(updates.size() - 1 - i));
+        }
+        String content = forward.getText("text").toString();
+        assertEquals(content, backward.getText("text").toString());
+        assertEquals(2 + 24 + 10 * 3 + 14 * 4, content.length());
+        for (int i = 0; i < 24; i++) {
+            assertTrue(content.contains("<" + i + ">"));
+            assertTrue(content.indexOf((char) ('A' + i)) < content.indexOf('a'));
+        }
+        assertEquals(forward.getMap("map").get("key"), backward.getMap("map").get("key"));
+        assertEquals(9, ((Number) forward.getMap("map").get("key")).intValue() % 10);
+    }
+
+    /**
+     * 批量插入: 连续的值合并为一个项, 多段文本作为一个项追加
+     */
+    @Test
+    public void testBulkInsert() {
+        Doc doc = new Doc();
+        YArray<Object> array = doc.getArray("array");
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            values.add(i % 2 == 0 ? i : "s" + i);
+        }
+        array.insertAll(0, values);
+        assertNull(array._start.right);
+        YMap embedded = new YMap();
+        array.insertAll(50, Arrays.asList("a", embedded, "b", "c"));
+        int items = 0;
+        for (Item n = array._start; n != null; n = n.right) {
+            items++;
+        }
+        // 拆分出的两个ContentAny项, "a", 嵌入的类型, "b""c"
+        assertEquals(5, items);
+        assertEquals(104, array.length());
+        assertSame(embedded, array.get(51));
+        assertEquals("c", array.get(53));
+        assertEquals("s51", array.get(55));
+
+        YText text = doc.getText("text");
+        text.insert(0, "!");
+        text.appendChunks(Stream.of("ab", null, "", "c\uD83D", "\uDE00d"));
+        assertEquals("!abc\uD83D\uDE00d", text.toString());
+        assertNull(text._start.right);
+
+        Doc remote = new Doc();
+        Y.applyUpdate(remote, Y.encodeStateAsUpdate(doc));
+        assertEquals(array.toJSON(), remote.getArray("array").toJSON());
+        assertEquals(text.toString(), remote.getText("text").toString());
+    }
+}
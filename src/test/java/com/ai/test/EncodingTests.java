@@ -2,10 +2,47 @@ package com.ai.test;
 
 
 import com.ai.Y;
+import com.ai.myutils.Uint8Array;
+import com.ai.myutils.decoder.Decoder;
+import com.ai.myutils.decoder.decoding;
+import com.ai.myutils.encoder.BufferPool;
+import com.ai.myutils.encoder.Encoder;
+import com.ai.myutils.encoder.encoding;
+import com.ai.protocol.UpdateBatcher;
 import com.ai.utils.Doc;
+import com.ai.utils.DocOptions;
+import com.ai.utils.Encoding;
+import com.ai.utils.StateVector;
+import com.ai.utils.Transaction;
+import com.ai.utils.Updates;
+import com.ai.utils.codec.UpdateFormat;
+import com.ai.utils.codec.decoder.UpdateDecoderV1;
+import com.ai.utils.codec.encoder.UpdateEncoderV2;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class EncodingTests {
@@ -45,4 +82,398 @@ public class EncodingTests {
         int[] update = Y.encodeStateVector(doc);
         assertTrue(update.length > 0);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testStateVectorOps() {
+        Map<Integer, Integer> map = new HashMap<>();
+        map.put(300, 5);
+        map.put(7, 2);
+        map.put(1 << 30, 9);
+        StateVector sv = StateVector.of(map);
+        assertEquals(map, sv);
+        assertEquals(sv, map);
+        assertEquals(map.hashCode(), sv.hashCode());
+        assertEquals(map, sv.toMap());
+        assertEquals(7, sv.clientAt(0));
+        assertEquals(0, sv.clock(8));
+        assertEquals(5, sv.getOrDefault(300, 0));
+        assertEquals(null, sv.get((Object) 8));
+
+        StateVector other = new StateVector.Builder().put(7, 4).put(12, 1).put(7, 3).build();
+        assertEquals(3, other.clock(7));
+        assertEquals(2, other.size());
+        assertFalse(sv.covers(other));
+        assertTrue(sv.merge(other).covers(sv));
+        assertTrue(sv.merge(other).covers(other));
+        assertEquals(4, sv.merge(other).size());
+        assertEquals(3, sv.merge(other).clock(7));
+        assertEquals(StateVector.of(Collections.singletonMap(7, 3)).merge(StateVector.of(Collections.singletonMap(12, 1))), other.diff(sv));
+        assertTrue(sv.diff(sv).isEmpty());
+
+        // 与Map形式编码结果一致
+        assertArrayEquals(Encoding.encodeStateVectorBytes(map), Encoding.encodeStateVectorBytes(sv));
+        assertEquals(sv, Y.decodeStateVector(Encoding.encodeStateVectorBytes(sv)));
+
+        Doc doc = new Doc();
+        doc.getText("text").insert(0, "abc", null);
+        assertEquals(Collections.singletonMap(doc.clientID, 3), Y.decodeStateVector(Y.encodeStateVectorBytes(doc)));
+    }
+
+    // byte[]更新与int[]更新应当完全一致
+    @Test
+    public void testByteArrayUpdates() {
+        Doc doc1 = new Doc();
+        doc1.getText("text").insert(0, "hello 世界", null);
+        doc1.getMap("map").set("k", "v");
+
+        byte[] update = Y.encodeStateAsUpdateBytes(doc1);
+        assertArrayEquals(Y.encodeStateAsUpdate(doc1), Uint8Array.toIntArray(update));
+        byte[] updateV2 = Y.encodeStateAsUpdateV2Bytes(doc1);
+        assertArrayEquals(Y.encodeStateAsUpdateV2(doc1), Uint8Array.toIntArray(updateV2));
+
+        Doc doc2 = new Doc();
+        Y.applyUpdate(doc2, update);
+        Doc doc3 = new Doc();
+        Y.applyUpdateV2(doc3, updateV2);
+        assertEquals("hello 世界", doc2.getText("text").toString());
+        assertEquals("hello 世界", doc3.getText("text").toString());
+        assertEquals("v", doc3.getMap("map").get("k"));
+
+        Doc doc4 = new Doc();
+        Y.applyUpdate(doc4, Y.diffUpdate(update, Y.encodeStateVectorBytes(doc4)));
+        assertEquals(doc1.getText("text").toString(), doc4.getText("text").toString());
+    }
+
+    // 直接从direct/mapped ByteBuffer中应用更新
+    @Test
+    public void testByteBufferUpdates() throws Exception {
+        Doc doc1 = new Doc();
+        doc1.getText("text").insert(0, "mapped ✓", null);
+        byte[] update = Y.encodeStateAsUpdateBytes(doc1);
+        byte[] updateV2 = Y.encodeStateAsUpdateV2Bytes(doc1);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(updateV2.length + 3);
+        direct.put(new byte[]{9, 9, 9}).put(updateV2).flip().position(3);
+        Doc doc2 = new Doc();
+        Y.applyUpdateV2(doc2, direct);
+        assertEquals(3, direct.position());
+        assertEquals("mapped ✓", doc2.getText("text").toString());
+
+        File file = File.createTempFile("yjs-update", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), update);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, update.length);
+            Doc doc3 = new Doc();
+            Y.applyUpdate(doc3, mapped);
+            assertEquals("mapped ✓", doc3.getText("text").toString());
+        }
+    }
+
+    // 池化编码器: 复用分块并直接写入输出流
+    @Test
+    public void testPooledEncoder() throws Exception {
+        BufferPool pool = new BufferPool(4);
+        Encoder encoder = encoding.createEncoder(pool);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                encoding.writeVarUint(encoder, i);
+            }
+            encoding.writeVarString(encoder, "pooled ✓");
+            Encoder plain = encoding.createEncoder();
+            for (int i = 0; i < 1000; i++) {
+                encoding.writeVarUint(plain, i);
+            }
+            encoding.writeVarString(plain, "pooled ✓");
+            byte[] expected = encoding.toByteArray(plain);
+
+            assertArrayEquals(expected, encoding.toByteArray(encoder));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            encoding.writeTo(encoder, out);
+            assertArrayEquals(expected, out.toByteArray());
+            out.reset();
+            encoding.writeTo(encoder, Channels.newChannel(out));
+            assertArrayEquals(expected, out.toByteArray());
+            encoding.release(encoder);
+            assertEquals(0, encoding.length(encoder));
+        }
+
+        // 大于64KB的块每个大小只保留两个, 池中保留的总字节数有上限
+        BufferPool large = new BufferPool(8);
+        BufferPool small = new BufferPool(8, 1000);
+        for (int i = 0; i < 8; i++) {
+            large.release(new byte[256 << 10]);
+            large.release(new byte[BufferPool.LARGE_CHUNK]);
+            small.release(new byte[BufferPool.MIN_CHUNK]);
+        }
+        assertEquals(2L * (256 << 10) + 8L * BufferPool.LARGE_CHUNK, large.retainedBytes());
+        assertEquals(7L * BufferPool.MIN_CHUNK, small.retainedBytes());
+        small.acquire(BufferPool.MIN_CHUNK);
+        assertEquals(6L * BufferPool.MIN_CHUNK, small.retainedBytes());
+        assertTrue(BufferPool.local().retainedBytes() <= BufferPool.LOCAL_MAX_BYTES);
+
+        Doc doc1 = new Doc();
+        Doc doc2 = new Doc();
+        doc1.<int[], Object, Doc, Transaction>on("update", (update, o, d, t) -> Y.applyUpdate(doc2, update));
+        doc1.getText("text").insert(0, "abc", null);
+        doc1.getText("text").insert(3, "def", null);
+        assertEquals("abcdef", doc2.getText("text").toString());
+    }
+
+    // 通过UpdateFormat选择编解码器
+    @Test
+    public void testUpdateFormat() {
+        assertEquals(UpdateFormat.V1, UpdateFormat.of(UpdateDecoderV1.class));
+        assertEquals(UpdateFormat.V2, UpdateFormat.of(UpdateEncoderV2.class));
+
+        Doc doc1 = new Doc();
+        doc1.getText("text").insert(0, "format", null);
+        byte[] update = Y.encodeStateAsUpdateBytes(doc1);
+        byte[] updateV2 = Updates.mergeUpdatesV2Bytes(Arrays.asList(update, update), UpdateFormat.V1, UpdateFormat.V2);
+        assertArrayEquals(Y.convertUpdateFormatV1ToV2(update), updateV2);
+
+        Doc doc2 = new Doc();
+        Encoding.applyUpdateV2(doc2, updateV2, null, UpdateFormat.V2);
+        assertEquals("format", doc2.getText("text").toString());
+
+        // 按Class指定编解码器的旧重载仍可用
+        int[] updateInts = Uint8Array.toIntArray(update);
+        assertArrayEquals(Uint8Array.toIntArray(updateV2),
+                Updates.mergeUpdatesV2(Arrays.asList(updateInts, updateInts), UpdateDecoderV1.class, UpdateEncoderV2.class));
+    }
+
+    // 可变长度整数和UTF-8字符串的读写, 包括跨分块和ByteBuffer解码
+    @Test
+    public void testVarUintAndStrings() {
+        int[] nums = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        String[] strs = {"", "hello", "ä€𝄞 mixed ✓", "\uD800 unpaired", repeat("x€", 200)};
+        Encoder encoder = encoding.createEncoder();
+        for (int i = 0; i < 300; i++) {
+            for (int num : nums) {
+                encoding.writeVarUint(encoder, num);
+            }
+            for (String str : strs) {
+                encoding.writeVarString(encoder, str);
+            }
+        }
+        byte[] bytes = encoding.toByteArray(encoder);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        for (Decoder decoder : Arrays.asList(decoding.createDecoder(bytes), decoding.createDecoder(direct))) {
+            for (int i = 0; i < 300; i++) {
+                for (int num : nums) {
+                    assertEquals(num, decoding.readVarUint(decoder));
+                }
+                for (String str : strs) {
+                    assertEquals(new String(str.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8), decoding.readVarString(decoder));
+                }
+            }
+            assertFalse(decoding.hasContent(decoder));
+        }
+    }
+
+    // 长度超出解码器范围的字节数组抛出异常, 不读取相邻的字节
+    @Test
+    public void testTruncatedUint8Array() {
+        Encoder encoder = encoding.createEncoder();
+        encoding.writeVarUint8Array(encoder, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        byte[] bytes = encoding.toByteArray(encoder);
+        byte[] truncated = Arrays.copyOf(bytes, 5);
+        ByteBuffer direct = ByteBuffer.allocateDirect(truncated.length);
+        direct.put(truncated).flip();
+        for (Decoder decoder : Arrays.asList(decoding.createDecoder(truncated), decoding.createDecoder(direct))) {
+            assertThrows(RuntimeException.class, () -> decoding.readVarUint8View(decoder));
+        }
+        assertThrows(RuntimeException.class, () -> decoding.readVarBytes(decoding.createDecoder(truncated)));
+
+        // 解码器只覆盖前面的部分, 后面还有其它数据
+        byte[] padded = Arrays.copyOf(bytes, bytes.length + 4);
+        Decoder section = new Decoder(padded, 0, 5);
+        assertThrows(RuntimeException.class, () -> decoding.readVarUint8View(section));
+        Decoder whole = new Decoder(padded, 0, bytes.length);
+        ByteBuffer view = decoding.readVarUint8View(whole);
+        assertEquals(8, view.remaining());
+        assertEquals(8, view.get(7));
+        assertFalse(decoding.hasContent(whole));
+    }
+
+    // 负整数按符号位+绝对值写入, 不影响后面的内容
+    @Test
+    public void testNegativeIntegers() {
+        long[] nums = {-1, -5, -63, -64, -8191, -8192, -(1L << 31), Short.MIN_VALUE, Byte.MIN_VALUE};
+        Encoder encoder = encoding.createEncoder();
+        for (long num : nums) {
+            encoding.writeVarInt(encoder, num, num < 0);
+            encoding.writeAny(encoder, num);
+            encoding.writeAny(encoder, (int) num);
+            encoding.writeAny(encoder, "after");
+        }
+        Decoder decoder = decoding.createDecoder(encoding.toByteArray(encoder));
+        for (long num : nums) {
+            assertEquals(num, decoding.readVarInt(decoder));
+            assertEquals(num, ((Number) decoding.readAny(decoder)).longValue());
+            assertEquals(num, ((Number) decoding.readAny(decoder)).longValue());
+            assertEquals("after", decoding.readAny(decoder));
+        }
+        assertFalse(decoding.hasContent(decoder));
+
+        Doc doc = new Doc();
+        doc.getMap("m").set("neg", -5);
+        doc.getMap("m").set("min", Integer.MIN_VALUE + 1);
+        doc.getArray("a").insert(0, Arrays.asList(-1, "x", -100000));
+        for (boolean v2 : new boolean[]{false, true}) {
+            Doc remote = new Doc();
+            if (v2) {
+                Y.applyUpdateV2(remote, Y.encodeStateAsUpdateV2Bytes(doc));
+            } else {
+                Y.applyUpdate(remote, Y.encodeStateAsUpdate(doc));
+            }
+            assertEquals(-5, ((Number) remote.getMap("m").get("neg")).intValue());
+            assertEquals(Integer.MIN_VALUE + 1, ((Number) remote.getMap("m").get("min")).intValue());
+            assertEquals(doc.getArray("a").toJSON().toString(), remote.getArray("a").toJSON().toString());
+        }
+    }
+
+    // update/updateV2在每个事务中只编码一次, 所有使用者共享
+    @Test
+    public void testSharedTransactionUpdate() {
+        for (boolean derive : new boolean[]{false, true}) {
+            Doc doc1 = new Doc(new DocOptions().setDeriveUpdateV1FromV2(derive));
+            Doc doc2 = new Doc();
+            Doc doc3 = new Doc();
+            List<int[]> seen = new ArrayList<>();
+            doc1.<Transaction>on("afterTransaction", tr -> seen.add(tr.getUpdate()));
+            doc1.<int[], Object, Doc, Transaction>on("update", (update, origin, d, tr) -> {
+                assertSame(seen.get(seen.size() - 1), update);
+                assertSame(update, tr.getUpdate());
+                Y.applyUpdate(doc2, update);
+            });
+            doc1.<int[], Object, Doc, Transaction>on("updateV2", (update, origin, d, tr) -> Y.applyUpdateV2(doc3, update));
+            doc1.getText("text").insert(0, "abc", null);
+            doc1.getText("text").insert(3, "def", null);
+            doc1.getText("text").delete(1, 2);
+            doc1.transact(tr -> null);
+            assertEquals(4, seen.size());
+            assertEquals(null, seen.get(3));
+            assertEquals("adef", doc2.getText("text").toString());
+            assertEquals("adef", doc3.getText("text").toString());
+        }
+        Doc doc = new Doc();
+        doc.transact(tr -> {
+            assertThrows(IllegalStateException.class, tr::getUpdate);
+            return null;
+        });
+    }
+
+    // 多字节clientID与向左的删除, 覆盖V2中UintOptRle/IntDiffOptRle的符号和负数差值
+    @Test
+    public void testV2RoundTrip() {
+        for (int clientID : new int[]{1, 0x40, 0x2000, 0x7fffffff}) {
+            Doc doc1 = new Doc();
+            doc1.clientID = clientID;
+            StringBuilder expected = new StringBuilder();
+            int cursor = 0;
+            for (int i = 0; i < 200; i++) {
+                if (i % 7 == 3) {
+                    cursor = (cursor * 31 + i) % (expected.length() + 1);
+                }
+                if (cursor > 0 && i % 5 == 0) {
+                    doc1.getText("text").delete(--cursor, 1);
+                    expected.deleteCharAt(cursor);
+                } else {
+                    String c = String.valueOf((char) ('a' + i % 26));
+                    doc1.getText("text").insert(cursor, c, null);
+                    expected.insert(cursor++, c);
+                }
+            }
+            Doc doc2 = new Doc();
+            Y.applyUpdateV2(doc2, Y.encodeStateAsUpdateV2Bytes(doc1));
+            assertEquals(expected.toString(), doc2.getText("text").toString());
+        }
+    }
+
+    // 批量应用: 乱序的更新合并后在一个事务中应用
+    @Test
+    public void testApplyUpdates() throws Exception {
+        Doc source = new Doc();
+        List<byte[]> updates = new ArrayList<>();
+        source.<int[], Object, Doc, Transaction>on("update", (update, origin, d, tr) -> updates.add(Uint8Array.toByteArray(update)));
+        for (int i = 0; i < 20; i++) {
+            source.getText("text").insert(i, String.valueOf((char) ('a' + i)), null);
+        }
+        source.getText("text").delete(3, 4);
+        String expected = source.getText("text").toString();
+        Collections.reverse(updates);
+
+        Doc doc = new Doc();
+        List<Object> origins = new ArrayList<>();
+        doc.<Transaction>on("afterTransaction", tr -> origins.add(tr.origin));
+        Y.applyUpdates(doc, updates, "remote");
+        assertEquals(expected, doc.getText("text").toString());
+        assertEquals(Collections.singletonList("remote"), origins);
+
+        Doc batched = new Doc();
+        List<Transaction> transactions = Collections.synchronizedList(new ArrayList<>());
+        batched.<Transaction>on("afterTransaction", transactions::add);
+        CountDownLatch flushed = new CountDownLatch(1);
+        try (UpdateBatcher batcher = new UpdateBatcher(batched, null, 8, 60_000)) {
+            for (byte[] update : updates) {
+                batcher.add(update);
+            }
+            assertEquals(2, transactions.size());
+            assertEquals(updates.size() - 16, batcher.size());
+        }
+        assertEquals(3, transactions.size());
+        assertEquals(expected, batched.getText("text").toString());
+
+        Doc delayed = new Doc();
+        delayed.<Transaction>on("afterTransaction", tr -> flushed.countDown());
+        try (UpdateBatcher batcher = new UpdateBatcher(delayed, null, 100, 10)) {
+            batcher.add(Y.encodeStateAsUpdateBytes(source));
+            assertTrue(flushed.await(10, TimeUnit.SECONDS));
+            assertEquals(0, batcher.size());
+        }
+        assertEquals(expected, delayed.getText("text").toString());
+    }
+
+    // 批量中有损坏的更新时逐个应用, 其它更新不丢失, 损坏的更新交给错误处理器
+    @Test
+    public void testBatchWithCorruptUpdate() {
+        Doc source = new Doc();
+        List<byte[]> updates = new ArrayList<>();
+        source.<int[], Object, Doc, Transaction>on("update", (update, origin, d, tr) -> updates.add(Uint8Array.toByteArray(update)));
+        for (int i = 0; i < 6; i++) {
+            source.getText("text").insert(i, String.valueOf((char) ('a' + i)), null);
+        }
+        String expected = source.getText("text").toString();
+        byte[] corrupt = {(byte) 0xff, (byte) 0xff, (byte) 0xff};
+        updates.add(3, corrupt);
+
+        Doc handled = new Doc();
+        List<byte[]> failed = new ArrayList<>();
+        try (UpdateBatcher batcher = new UpdateBatcher(handled, null, updates.size(), 60_000)) {
+            batcher.onError((update, error) -> failed.add(update));
+            updates.forEach(batcher::add);
+        }
+        assertEquals(expected, handled.getText("text").toString());
+        assertEquals(1, failed.size());
+        assertSame(corrupt, failed.get(0));
+
+        // 没有错误处理器时flush在应用其它更新后抛出错误
+        Doc thrown = new Doc();
+        UpdateBatcher batcher = new UpdateBatcher(thrown, null, 100, 60_000);
+        updates.forEach(batcher::add);
+        assertThrows(RuntimeException.class, batcher::flush);
+        assertEquals(expected, thrown.getText("text").toString());
+        assertEquals(0, batcher.size());
+        batcher.close();
+    }
+
+    private static String repeat(String s, int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+}